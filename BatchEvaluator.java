@@ -0,0 +1,134 @@
+/*
+Batch Evaluator
+Evaluates a postfix expression from MonteCarloIntegrationInput.inToPost over
+a whole array of x values at once. The program is compiled into opcodes
+once, and the stack machine works on blocks of lanes: each stack slot holds
+BLOCK values and every operator runs as a tight loop over them, which the
+JIT can vectorize. When the jdk.incubator.vector module is present and
+vector/VectorBatchEvaluator.java has been compiled (see its header),
+compile() returns a VectorBatchEvaluator that runs the same loops with
+explicit SIMD vectors instead.
+
+Instances keep their stack as scratch space, so share one per thread.
+*/
+
+import java.util.*;
+
+public class BatchEvaluator {
+
+	protected static final int BLOCK = 256; //lanes per stack slot
+	private static final byte X = 0;
+	private static final byte CONSTANT = 1;
+	private static final byte UNARY = 2;
+	private static final byte BINARY = 3;
+
+	protected final byte[] kinds;
+	protected final Operator[] ops;
+	protected final double[] constants;
+	protected final double[][] stack;
+
+	public static BatchEvaluator compile(Queue<String> postfix) {
+		//vectorized when the incubator module is available, scalar otherwise
+		try {
+			Class<?> vector = Class.forName("VectorBatchEvaluator");
+			return (BatchEvaluator) vector.getConstructor(Queue.class).newInstance(postfix);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return new BatchEvaluator(postfix);
+		}
+	}
+
+	public BatchEvaluator(Queue<String> postfix) {
+		kinds = new byte[postfix.size()];
+		ops = new Operator[postfix.size()];
+		constants = new double[postfix.size()];
+		int k = 0;
+		int depth = 0;
+		int maxDepth = 0;
+		for (String s: postfix) {
+			ops[k] = Operator.of(s);
+			if (s.equals("x")) {
+				kinds[k] = X;
+				depth++;
+			} else if (ops[k] == null) {
+				constants[k] = Double.parseDouble(s);
+				kinds[k] = CONSTANT;
+				depth++;
+			} else if (ops[k].isPrefix()) {
+				kinds[k] = UNARY;
+			} else {
+				kinds[k] = BINARY;
+				depth--;
+			}
+			maxDepth = Math.max(maxDepth, depth);
+			k++;
+		}
+		stack = new double[maxDepth][BLOCK];
+	}
+
+	public boolean isVectorized() {
+		return false;
+	}
+
+	public void evaluate(double[] xs, double[] out, int length) {
+		//out[i] = f(xs[i]) for the first length values
+		for (int offset = 0; offset < length; offset += BLOCK) {
+			int lanes = Math.min(BLOCK, length - offset);
+			evaluateBlock(xs, offset, lanes);
+			System.arraycopy(stack[0], 0, out, offset, lanes);
+		}
+	}
+
+	protected void evaluateBlock(double[] xs, int offset, int lanes) {
+		int top = 0;
+		for (int k = 0; k < kinds.length; k++) {
+			if (kinds[k] == X) {
+				System.arraycopy(xs, offset, stack[top++], 0, lanes);
+			} else if (kinds[k] == CONSTANT) {
+				Arrays.fill(stack[top++], 0, lanes, constants[k]);
+			} else if (kinds[k] == UNARY) {
+				unary(ops[k], stack[top - 1], 0, lanes);
+			} else {
+				top--;
+				binary(ops[k], stack[top - 1], stack[top], 0, lanes);
+			}
+		}
+	}
+
+	protected void unary(Operator op, double[] a, int from, int to) {
+		//a[i] = op(a[i])
+		if (op == Operator.NEGATE) {
+			for (int i = from; i < to; i++) {
+				a[i] = -a[i];
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				a[i] = op.apply(a[i]);
+			}
+		}
+	}
+
+	protected void binary(Operator op, double[] a, double[] b, int from, int to) {
+		//a[i] = a[i] op b[i], the lane-wise counterpart of simplify
+		if (op == Operator.ADD) {
+			for (int i = from; i < to; i++) {
+				a[i] += b[i];
+			}
+		} else if (op == Operator.SUBTRACT) {
+			for (int i = from; i < to; i++) {
+				a[i] -= b[i];
+			}
+		} else if (op == Operator.MULTIPLY) {
+			for (int i = from; i < to; i++) {
+				a[i] *= b[i];
+			}
+		} else if (op == Operator.DIVIDE) {
+			for (int i = from; i < to; i++) {
+				a[i] /= b[i];
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				a[i] = op.apply(a[i], b[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+Density Sink
+Accumulates hits and misses into one int[] per color and draws them as a
+heatmap in a single raster write, either at the end of a run or at a fixed
+frame rate, instead of drawing an oval for every sample.
+*/
+
+import java.awt.*;
+import java.awt.image.*;
+
+public class DensitySink implements SampleSink {
+
+	private static final int CHECK_EVERY = 4096; //samples between clock reads
+
+	private final Graphics g;
+	private final int width;
+	private final int height;
+	private final int[] hits;
+	private final int[] misses;
+	private final int[] pixels;
+	private final BufferedImage overlay;
+	private final Color hitColor;
+	private final Color missColor;
+	private final long frameNanos;
+	private long lastFlush;
+	private int sinceCheck;
+
+	public DensitySink(Graphics g, int width, int height, Color hitColor, Color missColor, int frameMillis) {
+		//frameMillis <= 0 only draws when flush is called
+		this.g = g;
+		this.width = width;
+		this.height = height;
+		this.hits = new int[width * height];
+		this.misses = new int[width * height];
+		this.pixels = new int[width * height];
+		this.overlay = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		this.hitColor = hitColor;
+		this.missColor = missColor;
+		this.frameNanos = frameMillis * 1000000L;
+		this.lastFlush = System.nanoTime();
+	}
+
+	public void add(int x, int y, boolean in) {
+		if (x >= 0 && x < width && y >= 0 && y < height) {
+			if (in) {
+				hits[y * width + x]++;
+			} else {
+				misses[y * width + x]++;
+			}
+		}
+		if (frameNanos > 0 && ++sinceCheck == CHECK_EVERY) {
+			sinceCheck = 0;
+			if (System.nanoTime() - lastFlush > frameNanos) {
+				flush();
+			}
+		}
+	}
+
+	public void flush() {
+		int max = 1;
+		for (int i = 0; i < pixels.length; i++) {
+			max = Math.max(max, hits[i] + misses[i]);
+		}
+		double scale = 1 / Math.log1p(max);
+		for (int i = 0; i < pixels.length; i++) {
+			int total = hits[i] + misses[i];
+			if (total == 0) {
+				pixels[i] = 0; //transparent, so the axes show through
+			} else {
+				//blend from miss color to hit color by hit fraction, then
+				//from white to that color by log density; sampled pixels are
+				//opaque so repeated frames replace rather than stack
+				double fraction = (double) hits[i] / total;
+				double density = Math.max(0.25, Math.log1p(total) * scale);
+				pixels[i] = 0xff000000
+					| shade(blend(missColor.getRed(), hitColor.getRed(), fraction), density) << 16
+					| shade(blend(missColor.getGreen(), hitColor.getGreen(), fraction), density) << 8
+					| shade(blend(missColor.getBlue(), hitColor.getBlue(), fraction), density);
+			}
+		}
+		overlay.setRGB(0, 0, width, height, pixels, 0, width);
+		g.drawImage(overlay, 0, 0, null);
+		lastFlush = System.nanoTime();
+	}
+
+	public int getHits(int x, int y) {
+		return hits[y * width + x];
+	}
+
+	public int getMisses(int x, int y) {
+		return misses[y * width + x];
+	}
+
+	private static double blend(int from, int to, double fraction) {
+		return from + (to - from) * fraction;
+	}
+
+	private static int shade(double channel, double density) {
+		return (int) Math.round(255 + (channel - 255) * density);
+	}
+}
@@ -6,13 +6,18 @@ constructs a DrawingPanel of a particular size and then draws on it with
 the Graphics object, setting the background color if they so choose.
 <p>
 
-To ensure that the image is always displayed, a timer calls repaint at
-regular intervals.
+To ensure that the image is always displayed, a timer repaints at regular
+intervals whatever part of it has been drawn on since the last tick; the
+Graphics object handed out records the bounds of every drawing call, and an
+idle panel is not repainted at all.
 <p>
 
 This version of DrawingPanel also saves animated GIFs, though this is kind
 of hit-and-miss because animated GIFs are pretty sucky (256 color limit, large
-file size, etc).
+file size, etc).  Each frame is encoded into the file soon after sleep()
+captures it, so animations may run as long as they like without the frames
+piling up in memory, and only the box of pixels that changed since the
+frame before is stored.
 <p>
 
 Recent features:
@@ -25,6 +30,7 @@ Recent features:
 */
 
 import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Composite;
@@ -33,13 +39,19 @@ import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.FlowLayout;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.GridLayout;
 import java.awt.Image;
+import java.awt.Paint;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
 import java.awt.Toolkit;
 import java.awt.Window;
 import java.awt.event.ActionEvent;
@@ -48,11 +60,24 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
 import java.awt.image.PixelGrabber;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.Exception;
@@ -69,10 +94,22 @@ import java.net.URL;
 import java.net.NoRouteToHostException;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -102,17 +139,6 @@ import javax.swing.filechooser.FileFilter;
 
 public final class DrawingPanel extends FileFilter
     implements ActionListener, MouseMotionListener, Runnable, WindowListener {
-    // inner class to represent one frame of an animated GIF
-    private static class ImageFrame {
-        public Image image;
-        public int delay;
-        
-        public ImageFrame(Image image, int delay) {
-            this.image = image;
-            this.delay = delay / 10;   // strangely, gif stores delay as sec/100
-        }
-    }
-    
     // class constants
     public static final String ANIMATED_PROPERTY   = "drawingpanel.animated";
     public static final String AUTO_ENABLE_ANIMATION_ON_SLEEP_PROPERTY = "drawingpanel.animateonsleep";
@@ -126,7 +152,6 @@ public final class DrawingPanel extends FileFilter
     private static final Color GRID_LINE_COLOR     = new Color(64, 64, 64, 128);
     private static final int GRID_SIZE             = 10;      // 10px between grid lines
     private static final int DELAY                 = 100;     // delay between repaints in millis
-    private static final int MAX_FRAMES            = 100;     // max animation frames
     private static final int MAX_SIZE              = 10000;   // max width/height
     private static final boolean DEBUG             = false;
     private static final boolean SAVE_SCALED_IMAGES = true;   // if true, when panel is zoomed, saves images at that zoom factor
@@ -233,6 +258,7 @@ public final class DrawingPanel extends FileFilter
         }
         
         public void paintComponent(Graphics g) {
+            long start = System.nanoTime();
             super.paintComponent(g);
             Graphics2D g2 = (Graphics2D) g;
             if (currentZoom != 1) {
@@ -250,6 +276,12 @@ public final class DrawingPanel extends FileFilter
                     g2.drawLine(col * GRID_SIZE, 0, col * GRID_SIZE, getHeight());
                 }
             }
+            
+            // the clip is what Swing asked for: the dirty region, or everything
+            Rectangle clip = g.getClipBounds();
+            repaintPixels += clip == null ? (long) getWidth() * getHeight() : (long) clip.width * clip.height;
+            repaintNanos += System.nanoTime() - start;
+            repaintCount++;
         }
         
         public void setImage(Image image) {
@@ -258,20 +290,188 @@ public final class DrawingPanel extends FileFilter
         }
     }
 
+    // Graphics2D that draws onto the panel's image and records the bounding box
+    // of everything it touches, so the timer only repaints what changed.
+    // Bounds are conservative: they include the stroke width and a pixel or
+    // two of antialiasing, and operations that are hard to bound mark everything.
+    private class DirtyGraphics extends Graphics2D {
+        private Graphics2D g;
+        private boolean transformed = false;   // true if g's transform is not the identity
+        
+        public DirtyGraphics(Graphics2D g) {
+            this.g = g;
+            transformed = !g.getTransform().isIdentity();
+        }
+        
+        // marks the user-space rectangle, widened by half the stroke, as dirty
+        private void touch(double x, double y, double w, double h, boolean stroked) {
+            double pad = 2;
+            if (stroked) {
+                if (g.getStroke() instanceof BasicStroke) {
+                    pad += ((BasicStroke) g.getStroke()).getLineWidth() / 2;
+                } else {
+                    touchAll();
+                    return;
+                }
+            }
+            if (!transformed) {
+                markDirty((int) Math.floor(x - pad), (int) Math.floor(y - pad),
+                          (int) Math.ceil(w + 2 * pad) + 1, (int) Math.ceil(h + 2 * pad) + 1);
+            } else {
+                Rectangle r = g.getTransform().createTransformedShape(
+                        new Rectangle2D.Double(x - pad, y - pad, w + 2 * pad, h + 2 * pad)).getBounds();
+                markDirty(r.x - 1, r.y - 1, r.width + 2, r.height + 2);
+            }
+        }
+        
+        private void touch(Shape s, boolean stroked) {
+            Rectangle2D r = s.getBounds2D();
+            touch(r.getX(), r.getY(), r.getWidth(), r.getHeight(), stroked);
+        }
+        
+        private void touchAll() {
+            markDirty(0, 0, width, height);
+        }
+        
+        private void touchPoints(int[] xs, int[] ys, int n) {
+            if (n <= 0) {
+                return;
+            }
+            int x0 = xs[0], x1 = xs[0], y0 = ys[0], y1 = ys[0];
+            for (int i = 1; i < n; i++) {
+                x0 = Math.min(x0, xs[i]);
+                x1 = Math.max(x1, xs[i]);
+                y0 = Math.min(y0, ys[i]);
+                y1 = Math.max(y1, ys[i]);
+            }
+            touch(x0, y0, x1 - x0, y1 - y0, true);
+        }
+        
+        private void touchText(String s, double x, double y) {
+            Rectangle2D r = g.getFont().getStringBounds(s, g.getFontRenderContext());
+            touch(x + r.getX(), y + r.getY(), r.getWidth(), r.getHeight(), false);
+        }
+        
+        private void transformChanged() {
+            transformed = !g.getTransform().isIdentity();
+        }
+        
+        // drawing operations: draw, then mark
+        public void draw(Shape s) { g.draw(s); touch(s, true); }
+        public void fill(Shape s) { g.fill(s); touch(s, false); }
+        public void clearRect(int x, int y, int w, int h) { g.clearRect(x, y, w, h); touch(x, y, w, h, false); }
+        public void copyArea(int x, int y, int w, int h, int dx, int dy) { g.copyArea(x, y, w, h, dx, dy); touch(x + dx, y + dy, w, h, false); }
+        public void drawArc(int x, int y, int w, int h, int start, int arc) { g.drawArc(x, y, w, h, start, arc); touch(x, y, w, h, true); }
+        public void fillArc(int x, int y, int w, int h, int start, int arc) { g.fillArc(x, y, w, h, start, arc); touch(x, y, w, h, false); }
+        public void drawLine(int x1, int y1, int x2, int y2) { g.drawLine(x1, y1, x2, y2); touch(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1), Math.abs(y2 - y1), true); }
+        public void drawOval(int x, int y, int w, int h) { g.drawOval(x, y, w, h); touch(x, y, w, h, true); }
+        public void fillOval(int x, int y, int w, int h) { g.fillOval(x, y, w, h); touch(x, y, w, h, false); }
+        public void drawRect(int x, int y, int w, int h) { g.drawRect(x, y, w, h); touch(x, y, w, h, true); }
+        public void fillRect(int x, int y, int w, int h) { g.fillRect(x, y, w, h); touch(x, y, w, h, false); }
+        public void drawRoundRect(int x, int y, int w, int h, int aw, int ah) { g.drawRoundRect(x, y, w, h, aw, ah); touch(x, y, w, h, true); }
+        public void fillRoundRect(int x, int y, int w, int h, int aw, int ah) { g.fillRoundRect(x, y, w, h, aw, ah); touch(x, y, w, h, false); }
+        public void drawPolyline(int[] xs, int[] ys, int n) { g.drawPolyline(xs, ys, n); touchPoints(xs, ys, n); }
+        public void drawPolygon(int[] xs, int[] ys, int n) { g.drawPolygon(xs, ys, n); touchPoints(xs, ys, n); }
+        public void fillPolygon(int[] xs, int[] ys, int n) { g.fillPolygon(xs, ys, n); touchPoints(xs, ys, n); }
+        public void drawString(String s, int x, int y) { g.drawString(s, x, y); touchText(s, x, y); }
+        public void drawString(String s, float x, float y) { g.drawString(s, x, y); touchText(s, x, y); }
+        public void drawString(AttributedCharacterIterator it, int x, int y) { g.drawString(it, x, y); touchAll(); }
+        public void drawString(AttributedCharacterIterator it, float x, float y) { g.drawString(it, x, y); touchAll(); }
+        public void drawGlyphVector(GlyphVector v, float x, float y) {
+            g.drawGlyphVector(v, x, y);
+            Rectangle2D r = v.getVisualBounds();
+            touch(x + r.getX(), y + r.getY(), r.getWidth(), r.getHeight(), false);
+        }
+        public void drawRenderedImage(RenderedImage img, AffineTransform xform) { g.drawRenderedImage(img, xform); touchAll(); }
+        public void drawRenderableImage(RenderableImage img, AffineTransform xform) { g.drawRenderableImage(img, xform); touchAll(); }
+        public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) { g.drawImage(img, op, x, y); touchAll(); }
+        public boolean drawImage(Image img, AffineTransform xform, ImageObserver o) { touchAll(); return g.drawImage(img, xform, o); }
+        public boolean drawImage(Image img, int x, int y, ImageObserver o) {
+            boolean done = g.drawImage(img, x, y, o);
+            touch(x, y, Math.max(img.getWidth(o), 0), Math.max(img.getHeight(o), 0), false);
+            return done;
+        }
+        public boolean drawImage(Image img, int x, int y, Color bg, ImageObserver o) {
+            boolean done = g.drawImage(img, x, y, bg, o);
+            touch(x, y, Math.max(img.getWidth(o), 0), Math.max(img.getHeight(o), 0), false);
+            return done;
+        }
+        public boolean drawImage(Image img, int x, int y, int w, int h, ImageObserver o) { touch(x, y, w, h, false); return g.drawImage(img, x, y, w, h, o); }
+        public boolean drawImage(Image img, int x, int y, int w, int h, Color bg, ImageObserver o) { touch(x, y, w, h, false); return g.drawImage(img, x, y, w, h, bg, o); }
+        public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver o) {
+            touch(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1), false);
+            return g.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, o);
+        }
+        public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, Color bg, ImageObserver o) {
+            touch(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1), false);
+            return g.drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, bg, o);
+        }
+        
+        // transforms
+        public void translate(int x, int y) { g.translate(x, y); transformChanged(); }
+        public void translate(double x, double y) { g.translate(x, y); transformChanged(); }
+        public void rotate(double theta) { g.rotate(theta); transformChanged(); }
+        public void rotate(double theta, double x, double y) { g.rotate(theta, x, y); transformChanged(); }
+        public void scale(double sx, double sy) { g.scale(sx, sy); transformChanged(); }
+        public void shear(double shx, double shy) { g.shear(shx, shy); transformChanged(); }
+        public void transform(AffineTransform t) { g.transform(t); transformChanged(); }
+        public void setTransform(AffineTransform t) { g.setTransform(t); transformChanged(); }
+        public AffineTransform getTransform() { return g.getTransform(); }
+        
+        // everything else passes straight through
+        public Graphics create() { return new DirtyGraphics((Graphics2D) g.create()); }
+        public void dispose() { g.dispose(); }
+        public boolean hit(Rectangle rect, Shape s, boolean onStroke) { return g.hit(rect, s, onStroke); }
+        public GraphicsConfiguration getDeviceConfiguration() { return g.getDeviceConfiguration(); }
+        public void setComposite(Composite comp) { g.setComposite(comp); }
+        public Composite getComposite() { return g.getComposite(); }
+        public void setPaint(Paint paint) { g.setPaint(paint); }
+        public Paint getPaint() { return g.getPaint(); }
+        public void setStroke(Stroke s) { g.setStroke(s); }
+        public Stroke getStroke() { return g.getStroke(); }
+        public void setRenderingHint(RenderingHints.Key key, Object value) { g.setRenderingHint(key, value); }
+        public Object getRenderingHint(RenderingHints.Key key) { return g.getRenderingHint(key); }
+        public void setRenderingHints(Map<?, ?> hints) { g.setRenderingHints(hints); }
+        public void addRenderingHints(Map<?, ?> hints) { g.addRenderingHints(hints); }
+        public RenderingHints getRenderingHints() { return g.getRenderingHints(); }
+        public void setBackground(Color color) { g.setBackground(color); }
+        public Color getBackground() { return g.getBackground(); }
+        public void clip(Shape s) { g.clip(s); }
+        public FontRenderContext getFontRenderContext() { return g.getFontRenderContext(); }
+        public Color getColor() { return g.getColor(); }
+        public void setColor(Color c) { g.setColor(c); }
+        public void setPaintMode() { g.setPaintMode(); }
+        public void setXORMode(Color c) { g.setXORMode(c); }
+        public Font getFont() { return g.getFont(); }
+        public void setFont(Font font) { g.setFont(font); }
+        public FontMetrics getFontMetrics(Font f) { return g.getFontMetrics(f); }
+        public Rectangle getClipBounds() { return g.getClipBounds(); }
+        public void clipRect(int x, int y, int w, int h) { g.clipRect(x, y, w, h); }
+        public void setClip(int x, int y, int w, int h) { g.setClip(x, y, w, h); }
+        public Shape getClip() { return g.getClip(); }
+        public void setClip(Shape clip) { g.setClip(clip); }
+    }
+    
     // fields
     private int width, height;             // dimensions of window frame
     private JFrame frame;                  // overall window frame
     private JPanel panel;                  // overall drawing surface
     private ImagePanel imagePanel;         // real drawing surface
     private BufferedImage image;           // remembers drawing commands
+    private int[] pixels;                  // image's ARGB pixels, or null if it is palettized
     private Graphics2D g2;                 // graphics context for painting
     private JLabel statusBar;              // status bar showing mouse position
     private JFileChooser chooser;          // file chooser to save files
     private long createTime;               // time at which DrawingPanel was constructed
     private Timer timer;                   // animation timer
-    private ArrayList<ImageFrame> frames;  // stores frames of animation to save
-    private Gif89Encoder encoder;
-    // private FileOutputStream stream;
+    private Gif89Encoder encoder;          // encodes frames of animation as they are captured
+    private OutputStream stream;           // animated GIF being written, or null if none
+    private String streamFile;             // name of the file stream is writing
+    private String savedFile;              // animated GIF finished by saveAnimated, or null
+    private BufferedImage frameImage;      // 256-color copy of image, reused for each frame
+    private byte[] lastPixels;             // color indexes of the last frame captured
+    private Gif89Frame pendingFrame;       // changes in the last frame, not yet encoded
+    private int pendingDelay;              // how long pendingFrame shows, in sec/100
     private Color backgroundColor = Color.WHITE;
     private String callingClassName;       // name of class that constructed this panel
     private boolean animated = false;      // changes to true if sleep() is called
@@ -280,6 +480,9 @@ public final class DrawingPanel extends FileFilter
     private int instanceNumber;
     private int currentZoom = 1;
     private int initialPixel;              // initial value in each pixel, for clear()
+    private int dirtyX0 = Integer.MAX_VALUE, dirtyY0 = Integer.MAX_VALUE;  // bounds of what changed
+    private int dirtyX1 = Integer.MIN_VALUE, dirtyY1 = Integer.MIN_VALUE;  // since the last repaint
+    private long repaintCount, repaintNanos, repaintPixels;  // cost of repainting, for getRepaint...()
     
     // construct a drawing panel of given width and height enclosed in a window
     public DrawingPanel(int width, int height) {
@@ -336,17 +539,14 @@ public final class DrawingPanel extends FileFilter
             image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         }
         initialPixel = image.getRGB(0, 0);
+        pixels = pixelsOf(image);
         
-        g2 = (Graphics2D) image.getGraphics();
+        g2 = new DirtyGraphics((Graphics2D) image.getGraphics());
         g2.setColor(Color.BLACK);
         if (PRETTY) {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         }
         
-        if (isAnimated()) {
-            initializeAnimation();
-        }
-        
         if (isGraphical()) {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -411,8 +611,8 @@ public final class DrawingPanel extends FileFilter
     // used for an internal timer that keeps repainting
     public void actionPerformed(ActionEvent e) {
         if (e.getSource() instanceof Timer) {
-            // redraw the screen at regular intervals to catch all paint operations
-            panel.repaint();
+            // redraw whatever was drawn on since the last tick; nothing if idle
+            repaintDirty();
             if (shouldDiff() &&
                 System.currentTimeMillis() > createTime + 4 * DELAY) {
                 String expected = System.getProperty(DIFF_PROPERTY);
@@ -487,6 +687,71 @@ public final class DrawingPanel extends FileFilter
             pixels[i] = initialPixel;
         }
         image.setRGB(0, 0, width, height, pixels, 0, 1);
+        markDirty(0, 0, width, height);
+    }
+    
+    // plots n one-pixel points (xs[i], ys[i]) in the given color, writing the
+    // pixels directly; much faster than drawOval(x, y, 1, 1) for large data sets.
+    // Points outside the panel are skipped.
+    public void drawPoints(int[] xs, int[] ys, int n, Color color) {
+        drawScatter(xs, ys, n, 1, color);
+    }
+    
+    // connects n points (xs[i], ys[i]) with one-pixel lines in the given color
+    public void drawPolyline(int[] xs, int[] ys, int n, Color color) {
+        markDirty(xs, ys, n, 1);
+        int argb = color.getRGB();
+        if (n == 1) {
+            setPixel(xs[0], ys[0], argb);
+        }
+        for (int i = 1; i < n; i++) {
+            // Bresenham's line algorithm; the shared end point is drawn twice,
+            // which is harmless for opaque colors
+            int x = xs[i - 1], y = ys[i - 1];
+            int dx = Math.abs(xs[i] - x), dy = -Math.abs(ys[i] - y);
+            int sx = x < xs[i] ? 1 : -1, sy = y < ys[i] ? 1 : -1;
+            int error = dx + dy;
+            while (true) {
+                setPixel(x, y, argb);
+                if (x == xs[i] && y == ys[i]) {
+                    break;
+                }
+                int e2 = 2 * error;
+                if (e2 >= dy) {
+                    error += dy;
+                    x += sx;
+                }
+                if (e2 <= dx) {
+                    error += dx;
+                    y += sy;
+                }
+            }
+        }
+    }
+    
+    // plots n size-by-size square markers with top-left corners (xs[i], ys[i]),
+    // clipped to the panel
+    public void drawScatter(int[] xs, int[] ys, int n, int size, Color color) {
+        markDirty(xs, ys, n, size);
+        int argb = color.getRGB();
+        boolean opaque = (argb >>> 24) == 0xFF;
+        for (int i = 0; i < n; i++) {
+            int x0 = Math.max(xs[i], 0), x1 = Math.min(xs[i] + size, width);
+            int y0 = Math.max(ys[i], 0), y1 = Math.min(ys[i] + size, height);
+            for (int y = y0; y < y1; y++) {
+                if (pixels != null && opaque) {
+                    // fast path: straight into the raster
+                    int row = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        pixels[row + x] = argb;
+                    }
+                } else {
+                    for (int x = x0; x < x1; x++) {
+                        setPixel(x, y, argb);
+                    }
+                }
+            }
+        }
     }
     
     // method of FileFilter interface
@@ -504,6 +769,31 @@ public final class DrawingPanel extends FileFilter
         return height;
     }
      
+    // returns the image's pixels as a row-major array of ARGB ints, pixel (x, y)
+    // at index y * getWidth() + x; writes to it show up on the panel directly.
+    // Returns null while capturing an animated GIF, where the image is palettized.
+    // The whole panel is repainted once after this call; call markDirty after
+    // any later writes.
+    public int[] getPixels() {
+        markDirty(0, 0, width, height);
+        return pixels;
+    }
+    
+    // number of times the panel has been repainted on screen
+    public long getRepaintCount() {
+        return repaintCount;
+    }
+    
+    // average time one repaint has taken, in milliseconds
+    public double getRepaintMillis() {
+        return repaintCount == 0 ? 0 : repaintNanos / 1e6 / repaintCount;
+    }
+    
+    // average number of pixels one repaint has covered
+    public double getRepaintPixels() {
+        return repaintCount == 0 ? 0 : (double) repaintPixels / repaintCount;
+    }
+    
     // returns the drawing panel's pixel size (width, height) as a Dimension object
     public Dimension getSize() {
         return new Dimension(width, height);
@@ -519,6 +809,16 @@ public final class DrawingPanel extends FileFilter
         return currentZoom;
     }
     
+    // records that the given rectangle of the image changed, so that the next
+    // timer tick repaints it; drawing through getGraphics() or the draw...
+    // methods does this already
+    public synchronized void markDirty(int x, int y, int w, int h) {
+        dirtyX0 = Math.min(dirtyX0, Math.max(x, 0));
+        dirtyY0 = Math.min(dirtyY0, Math.max(y, 0));
+        dirtyX1 = Math.max(dirtyX1, Math.min(x + w, width));
+        dirtyY1 = Math.max(dirtyY1, Math.min(y + h, height));
+    }
+    
     // listens to mouse dragging
     public void mouseDragged(MouseEvent e) {}
     
@@ -582,32 +882,24 @@ public final class DrawingPanel extends FileFilter
     
     // take the current contents of the panel and write them to a file
     public void saveAnimated(String filename) throws IOException {
-        // add one more final frame
         if (DEBUG) System.out.println("saveAnimated(" + filename + ")");
-        frames.add(new ImageFrame(getImage(), 5000));
-        // encoder.continueEncoding(stream, getImage(), 5000);
-        
-        // Gif89Encoder gifenc = new Gif89Encoder();
-        
-        // add each frame of animation to the encoder
-        try {
-            for (int i = 0; i < frames.size(); i++) {
-                ImageFrame imageFrame = frames.get(i);
-                encoder.addFrame(imageFrame.image);
-                encoder.getFrameAt(i).setDelay(imageFrame.delay);
-                imageFrame.image.flush();
-                frames.set(i, null);
-            }
-        } catch (OutOfMemoryError e) {
-            System.out.println("Out of memory when saving");
+        if (stream == null && filename.equals(savedFile)) {
+            // already finished (e.g. saved explicitly, then again on exit);
+            // starting over would truncate it to a single frame
+            return;
+        }
+        if (stream != null && !filename.equals(streamFile)) {
+            // frames captured so far stay in the file they were streamed to
+            endAnimation();
+        }
+        if (stream == null) {
+            startAnimation(filename);
         }
         
-        // gifenc.setComments(annotation);
-        // gifenc.setUniformDelay((int) Math.round(100 / frames_per_second));
-        // gifenc.setUniformDelay(DELAY);
-        // encoder.setBackground(backgroundColor);
-        encoder.setLoopCount(0);
-        encoder.encode(new FileOutputStream(filename));
+        // add one more final frame
+        captureFrame(5000);
+        endAnimation();
+        savedFile = filename;
     }
     
     // set the background color of the drawing panel
@@ -652,7 +944,8 @@ public final class DrawingPanel extends FileFilter
         this.width = width;
         this.height = height;
         image = newImage;
-        g2 = (Graphics2D) newImage.getGraphics();
+        pixels = pixelsOf(image);
+        g2 = new DirtyGraphics((Graphics2D) newImage.getGraphics());
         g2.setColor(Color.BLACK);
         if (PRETTY) {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -685,7 +978,7 @@ public final class DrawingPanel extends FileFilter
             if (millis > 0) {
                 try {
                     Thread.sleep(millis);
-                    panel.repaint();
+                    repaintDirty();
                     toFront(frame);
                 } catch (Exception e) {}
             }
@@ -694,20 +987,20 @@ public final class DrawingPanel extends FileFilter
         // manually enable animation if necessary
         if (!isAnimated() && !isMultiple() && autoEnableAnimationOnSleep()) {
             animated = true;
-            initializeAnimation();
         }
         
-        // capture a frame of animation
+        // capture a frame of animation, encoding it straight into the saved file
         if (isAnimated() && shouldSave() && !isMultiple()) {
             try {
-                if (frames.size() < MAX_FRAMES) {
-                    frames.add(new ImageFrame(getImage(), millis));
+                if (stream == null) {
+                    startAnimation(System.getProperty(SAVE_PROPERTY));
                 }
+                captureFrame(millis);
                 
                 // reset creation timer so that we won't save/close just yet
                 createTime = System.currentTimeMillis();
-            } catch (OutOfMemoryError e) {
-                System.out.println("Out of memory after capturing " + frames.size() + " frames");
+            } catch (IOException e) {
+                System.err.println("Error saving animation frame: " + e);
             }
         }
     }
@@ -911,6 +1204,58 @@ public final class DrawingPanel extends FileFilter
         return className;
     }
     
+    // marks the bounding box of n size-by-size markers as dirty
+    private void markDirty(int[] xs, int[] ys, int n, int size) {
+        if (n <= 0) {
+            return;
+        }
+        int x0 = xs[0], x1 = xs[0], y0 = ys[0], y1 = ys[0];
+        for (int i = 1; i < n; i++) {
+            x0 = Math.min(x0, xs[i]);
+            x1 = Math.max(x1, xs[i]);
+            y0 = Math.min(y0, ys[i]);
+            y1 = Math.max(y1, ys[i]);
+        }
+        markDirty(x0, y0, x1 - x0 + size, y1 - y0 + size);
+    }
+    
+    // the backing array of an ARGB image, or null for any other kind
+    private int[] pixelsOf(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        return null;
+    }
+    
+    // sets one pixel, blending translucent colors over what is there; does nothing off the panel
+    private void setPixel(int x, int y, int argb) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+        int alpha = argb >>> 24;
+        if (pixels == null) {
+            image.setRGB(x, y, alpha == 0xFF ? argb : blend(image.getRGB(x, y), argb));
+        } else {
+            pixels[y * width + x] = alpha == 0xFF ? argb : blend(pixels[y * width + x], argb);
+        }
+    }
+    
+    // source-over compositing of two non-premultiplied ARGB colors
+    private static int blend(int under, int over) {
+        int a = over >>> 24;
+        int b = (under >>> 24) * (255 - a) / 255;
+        int alpha = a + b;
+        if (alpha == 0) {
+            return 0;
+        }
+        int result = alpha << 24;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int channel = (((over >> shift) & 0xFF) * a + ((under >> shift) & 0xFF) * b) / alpha;
+            result |= channel << shift;
+        }
+        return result;
+    }
+    
     private BufferedImage getImage() {
         // create second image so we get the background color
         BufferedImage image2;
@@ -919,27 +1264,153 @@ public final class DrawingPanel extends FileFilter
         } else {
             image2 = new BufferedImage(width, height, image.getType());
         }
+        drawImageOn(image2);
+        return image2;
+    }
+    
+    // draws the background color and then the image onto the given image
+    private void drawImageOn(BufferedImage image2) {
         Graphics g = image2.getGraphics();
         if (DEBUG) System.out.println("getImage setting background to " + backgroundColor);
         g.setColor(backgroundColor);
         g.fillRect(0, 0, width, height);
         g.drawImage(image, 0, 0, panel);
-        return image2;
+        g.dispose();
     }
     
-    private void initializeAnimation() {
-        frames = new ArrayList<ImageFrame>();
-        encoder = new Gif89Encoder();
-        /*
+    // opens the given file and writes the start of an animated GIF to it;
+    // every frame is drawn from the default 256-color palette of an indexed
+    // image, so that palette is the GIF's color table from the start
+    private void startAnimation(String filename) throws IOException {
+        frameImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED);
+        IndexColorModel model = (IndexColorModel) frameImage.getColorModel();
+        Color[] palette = new Color[model.getMapSize()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = new Color(model.getRGB(i));
+        }
+        encoder = new Gif89Encoder(palette);
+        encoder.setLoopCount(0);
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            encoder.setWorkerPool(ForkJoinPool.commonPool());
+        }
+        OutputStream out = new GifOutputStream(filename);
         try {
-            if (hasProperty(SAVE_PROPERTY)) {
-                stream = new FileOutputStream(System.getProperty(SAVE_PROPERTY));
-            }
-            // encoder.startEncoding(stream);
+            encoder.startEncoding(out, new Dimension(width, height));
         } catch (IOException e) {
-            System.out.println(e);
+            out.close();
+            throw e;
+        }
+        stream = out;
+        streamFile = filename;
+        savedFile = null;
+        lastPixels = null;
+        pendingFrame = null;
+    }
+    
+    // quantizes the current image to the palette and makes it the next frame,
+    // to be shown for the given number of ms; only the bounding box of the
+    // pixels that changed since the last frame is kept, with the unchanged
+    // pixels inside it made transparent if the palette has an index to spare,
+    // and a frame with no changes just lengthens the one before it
+    private void captureFrame(int millis) throws IOException {
+        int delay = millis / 10;   // strangely, gif stores delay as sec/100
+        if (frameImage.getWidth() != width || frameImage.getHeight() != height) {
+            frameImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED);
+            lastPixels = null;
+        }
+        drawImageOn(frameImage);
+        byte[] ciPixels = ((DataBufferByte) frameImage.getRaster().getDataBuffer()).getData();
+        if (lastPixels == null) {
+            encodePendingFrame();
+            lastPixels = ciPixels.clone();
+            pendingFrame = new IndexGif89Frame(width, height, ciPixels);
+            pendingDelay = delay;
+            return;
+        }
+        
+        // find the rows and columns in which anything changed
+        int x0 = width, x1 = -1, y0 = -1, y1 = -1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int first = Arrays.mismatch(ciPixels, row, row + width, lastPixels, row, row + width);
+            if (first >= 0) {
+                if (y0 < 0) {
+                    y0 = y;
+                }
+                y1 = y;
+                x0 = Math.min(x0, first);
+                int last = width - 1;
+                while (last > x1 && ciPixels[row + last] == lastPixels[row + last]) {
+                    last--;
+                }
+                x1 = Math.max(x1, last);
+            }
+        }
+        if (y0 < 0) {
+            pendingDelay = Math.min(pendingDelay + delay, 0xffff);
+            return;
+        }
+        
+        // copy out the changed box, noting which colors the changes use
+        int w = x1 - x0 + 1;
+        int h = y1 - y0 + 1;
+        byte[] changes = new byte[w * h];
+        boolean[] used = new boolean[256];
+        for (int y = 0; y < h; y++) {
+            int from = (y0 + y) * width + x0;
+            System.arraycopy(ciPixels, from, changes, y * w, w);
+            for (int x = 0; x < w; x++) {
+                if (ciPixels[from + x] != lastPixels[from + x]) {
+                    used[ciPixels[from + x] & 0xff] = true;
+                }
+            }
+        }
+        int transparent = 0;
+        while (transparent < used.length && used[transparent]) {
+            transparent++;
+        }
+        if (transparent < used.length) {
+            for (int y = 0; y < h; y++) {
+                int from = (y0 + y) * width + x0;
+                for (int x = 0; x < w; x++) {
+                    if (ciPixels[from + x] == lastPixels[from + x]) {
+                        changes[y * w + x] = (byte) transparent;
+                    }
+                }
+            }
+        } else {
+            transparent = -1;
+        }
+        for (int y = y0; y <= y1; y++) {
+            System.arraycopy(ciPixels, y * width + x0, lastPixels, y * width + x0, w);
+        }
+        
+        encodePendingFrame();
+        pendingFrame = new IndexGif89Frame(w, h, changes);
+        pendingFrame.setPosition(new Point(x0, y0));
+        pendingFrame.setDisposalMode(Gif89Frame.DM_LEAVE);
+        pendingFrame.setTransparentIndex(transparent);
+        pendingDelay = delay;
+    }
+    
+    // encodes the frame held back by captureFrame, now that its delay is known
+    private void encodePendingFrame() throws IOException {
+        if (pendingFrame != null) {
+            pendingFrame.setDelay(pendingDelay);
+            encoder.continueEncoding(pendingFrame);
+            pendingFrame = null;
+        }
+    }
+    
+    // writes the end of the animated GIF being streamed and closes its file
+    private void endAnimation() throws IOException {
+        try {
+            encodePendingFrame();
+            encoder.endEncoding();
+        } finally {
+            stream.close();
+            stream = null;
         }
-        */
     }
     
     private boolean autoEnableAnimationOnSleep() {
@@ -970,6 +1441,23 @@ public final class DrawingPanel extends FileFilter
         return (instances == 0 || shouldSave()) && !mainIsActive();
     }
     
+    // repaints the part of the screen that changed since the last call, if any
+    private void repaintDirty() {
+        int x0, y0, x1, y1;
+        synchronized (this) {
+            x0 = dirtyX0;
+            y0 = dirtyY0;
+            x1 = dirtyX1;
+            y1 = dirtyY1;
+            dirtyX0 = dirtyY0 = Integer.MAX_VALUE;
+            dirtyX1 = dirtyY1 = Integer.MIN_VALUE;
+        }
+        if (x0 < x1 && y0 < y1 && imagePanel != null) {
+            imagePanel.repaint(x0 * currentZoom, y0 * currentZoom,
+                               (x1 - x0) * currentZoom, (y1 - y0) * currentZoom);
+        }
+    }
+    
     private void replaceColor(BufferedImage image, Color oldColor, Color newColor) {
         int oldRGB = oldColor.getRGB();
         int newRGB = newColor.getRGB();
@@ -980,6 +1468,7 @@ public final class DrawingPanel extends FileFilter
                 }
             }
         }
+        markDirty(0, 0, image.getWidth(), image.getHeight());
     }
     
     // called when user presses "Save As" menu item
@@ -1760,6 +2249,13 @@ public final class DrawingPanel extends FileFilter
       private int          loopCount = 1;
       private String        theComments;
       private Vector<Gif89Frame> vFrames = new Vector<Gif89Frame>();
+      private OutputStream  streamOut;  // GIF begun by startEncoding(), if any
+      private ForkJoinPool  workerPool; // compresses frames, if not null
+      private ArrayDeque<Future<byte[]>> pendingFrames = new ArrayDeque<Future<byte[]>>();
+      private ThreadLocal<GifPixelsEncoder> pixelsEncoders =
+        new ThreadLocal<GifPixelsEncoder>() {
+          protected GifPixelsEncoder initialValue() { return new GifPixelsEncoder(); }
+        };
     
       //----------------------------------------------------------------------------
       /** Use this default constructor if you'll be adding multiple frames
@@ -1973,6 +2469,21 @@ public final class DrawingPanel extends FileFilter
         theComments = comments;
       }
     
+      //----------------------------------------------------------------------------
+      /** Have frames compressed concurrently on a pool of worker threads.  Once
+       *  color indices are assigned the frames are independent, so each is
+       *  compressed into a buffer of its own, and the buffers are written to the
+       *  stream in frame order.
+       *
+       * @param pool
+       *   The pool to compress frames on, or null to compress each frame on the
+       *   calling thread as it is written.  (Default: null)
+       */
+      public void setWorkerPool(ForkJoinPool pool)
+      {
+        workerPool = pool;
+      }
+    
       //----------------------------------------------------------------------------
       /** A convenience method for setting the "animation speed".  It simply sets
        *  the delay parameter for each frame in the sequence to the supplied value.
@@ -2021,11 +2532,10 @@ public final class DrawingPanel extends FileFilter
     
         // write out the control and rendering data for each frame
         for (int i = 0; i < nframes; ++i) {
-          DirectGif89Frame frame = (DirectGif89Frame) vFrames.elementAt(i);
-          frame.encode(out, is_sequence, colorTable.getDepth(), colorTable.getTransparent());
+          queueFrame(vFrames.elementAt(i), out, is_sequence);
           vFrames.set(i, null);   // for GC's sake
-          System.gc();
         }
+        writeFrames(out, 0);
     
         // write GIF TRAILER
         out.write((int) ';');
@@ -2033,26 +2543,27 @@ public final class DrawingPanel extends FileFilter
         out.flush();
       }
       
-      public boolean hasStarted = false;
-    
       //----------------------------------------------------------------------------
-      /** After adding your frame(s) and setting your options, simply call this
-       * method to write the GIF to the passed stream.  Multiple calls are
-       * permissible if for some reason that is useful to your application.  (The
-       * method simply encodes the current state of the object with no thought
-       * to previous calls.)
+      /** Begin streaming a GIF to the passed stream.  The header and global blocks
+       *  are written at once, and from then on each frame passed to
+       *  continueEncoding() is written as soon as it arrives and isn't kept, so
+       *  an animation of any length can be encoded in the memory of one frame.
+       *  Since the color table has to be written before any frame is seen, this
+       *  requires an encoder constructed with an explicit color table.
        *
        * @param out
        *   The stream you want the GIF written to.
+       * @param dim
+       *   Width/height of the logical display; frames should fit within it.
        * @exception IOException
-       *   If a write error is encountered.
+       *   If a write error is encountered, or if the encoder was constructed
+       *   without an explicit color table.
        */
-      public void startEncoding(OutputStream out, Image image, int delay) throws IOException
+      public void startEncoding(OutputStream out, Dimension dim) throws IOException
       {
-        hasStarted = true;
-        boolean is_sequence = true;
-        Gif89Frame gf = new DirectGif89Frame(image);
-        accommodateFrame(gf);
+        if (!colorTable.isExplicit())
+          throw new IOException("streaming requires an explicit color table");
+        dispDim = new Dimension(dim);
     
         // N.B. must be called before writing screen descriptor
         colorTable.closePixelProcessing(); 
@@ -2063,22 +2574,47 @@ public final class DrawingPanel extends FileFilter
         // write global blocks
         writeLogicalScreenDescriptor(out);  
         colorTable.encode(out);
-        if (is_sequence && loopCount != 1)
+        if (loopCount != 1)
           writeNetscapeExtension(out);
         if (theComments != null && theComments.length() > 0)  
           writeCommentExtension(out);
+        streamOut = out;
       }
       
-      public void continueEncoding(OutputStream out, Image image, int delay) throws IOException {
-        // write out the control and rendering data for each frame
-        Gif89Frame gf = new DirectGif89Frame(image);
-        accommodateFrame(gf);
-        gf.encode(out, true, colorTable.getDepth(), colorTable.getTransparent());
-        out.flush();
-        image.flush();
+      //----------------------------------------------------------------------------
+      /** Write the control and rendering data for one more frame of the GIF begun
+       *  by startEncoding().  Frames are not added to the internal sequence.
+       *
+       * @param gf
+       *   An IndexGif89Frame whose color indices refer to the explicit table.
+       * @exception IOException
+       *   If a write error is encountered, if no GIF is being streamed, or if the
+       *   frame is a DirectGif89Frame, whose colors couldn't be added to the table.
+       */
+      public void continueEncoding(Gif89Frame gf) throws IOException
+      {
+        if (streamOut == null)
+          throw new IOException("startEncoding() has not been called");
+        if (gf instanceof DirectGif89Frame)
+          throw new IOException("streamed frames must be IndexGif89Frames");
+        queueFrame(gf, streamOut, true);
       }
     
-      public void endEncoding(OutputStream out) throws IOException {
+      //----------------------------------------------------------------------------
+      /** Write the GIF trailer, ending the GIF begun by startEncoding().  The
+       *  stream itself is left open.
+       *
+       * @exception IOException
+       *   If a write error is encountered, or if no GIF is being streamed.
+       */
+      public void endEncoding() throws IOException
+      {
+        if (streamOut == null)
+          throw new IOException("startEncoding() has not been called");
+        OutputStream out = streamOut;
+        streamOut = null;
+        writeFrames(out, 0);
+        
         // write GIF TRAILER
         out.write((int) ';');
         
@@ -2103,6 +2639,53 @@ public final class DrawingPanel extends FileFilter
           if (DEBUG) System.out.println("Setting bg index to " + bgIndex);
       }
     
+      //----------------------------------------------------------------------------
+      // Encode a frame straight to the stream, or with a worker pool, queue it to
+      // be compressed and then write whichever frames at the head of the queue
+      // are done.  At most two frames per worker are left in flight.
+      private void queueFrame(final Gif89Frame gf, OutputStream out,
+                              final boolean is_sequence) throws IOException
+      {
+        final int color_depth = colorTable.getDepth();
+        final int transparent_index = colorTable.getTransparent();
+        if (workerPool == null)
+        {
+          gf.encode(out, is_sequence, color_depth, transparent_index,
+                    pixelsEncoders.get());
+          return;
+        }
+        pendingFrames.add(workerPool.submit(new Callable<byte[]>() {
+          public byte[] call() throws IOException
+          {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            gf.encode(buffer, is_sequence, color_depth, transparent_index,
+                      pixelsEncoders.get());
+            return buffer.toByteArray();
+          }
+        }));
+        writeFrames(out, 2 * workerPool.getParallelism());
+      }
+    
+      //----------------------------------------------------------------------------
+      // Write queued frames in order, waiting for them until at most max_pending
+      // are left, and then taking any more that are already done.
+      private void writeFrames(OutputStream out, int max_pending) throws IOException
+      {
+        while (pendingFrames.size() > max_pending ||
+               !pendingFrames.isEmpty() && pendingFrames.peek().isDone())
+        {
+          try {
+            out.write(pendingFrames.remove().get());
+          } catch (InterruptedException e) {
+            pendingFrames.clear();
+            throw new InterruptedIOException("interrupted encoding frames");
+          } catch (ExecutionException e) {
+            pendingFrames.clear();
+            throw new IOException("can't encode frame", e.getCause());
+          }
+        }
+      }
+    
       //----------------------------------------------------------------------------
       private void accommodateFrame(Gif89Frame gf) throws IOException
       {
@@ -2216,6 +2799,7 @@ public final class DrawingPanel extends FileFilter
         int n2copy = Math.min(theColors.length, colors.length);
         for (int i = 0; i < n2copy; ++i)
           theColors[i] = colors[i].getRGB();
+        ciCount = n2copy;  // every entry is written, even if no frame uses it
       }
       
       int indexOf(Color color) {
@@ -2228,6 +2812,9 @@ public final class DrawingPanel extends FileFilter
           return -1;
       }
     
+      //----------------------------------------------------------------------------
+      boolean isExplicit() { return ciLookup == null; }
+    
       //----------------------------------------------------------------------------
       int getDepth() { return colorDepth; }  
     
@@ -2263,12 +2850,14 @@ public final class DrawingPanel extends FileFilter
         // the number of RGB colors detected (or largest color index, in case of
         // index pixels)
         int palette_size = 1 << colorDepth; 
+        byte[] rgb = new byte[3 * palette_size];
         for (int i = 0; i < palette_size; ++i)
         {
-          os.write(theColors[i] >> 16 & 0xff);
-          os.write(theColors[i] >>  8 & 0xff);
-          os.write(theColors[i] & 0xff);
+          rgb[3 * i]     = (byte) (theColors[i] >> 16);
+          rgb[3 * i + 1] = (byte) (theColors[i] >>  8);
+          rgb[3 * i + 2] = (byte) theColors[i];
         }
+        os.write(rgb);
       }
     
       //----------------------------------------------------------------------------
@@ -2334,8 +2923,8 @@ public final class DrawingPanel extends FileFilter
         byte[] ci_pixels = (byte[]) igf.getPixelSource(); 
         int npixels = ci_pixels.length;   
         for (int i = 0; i < npixels; ++i)
-          if (ci_pixels[i] >= ciCount)
-            ciCount = ci_pixels[i] + 1;
+          if ((ci_pixels[i] & 0xff) >= ciCount)
+            ciCount = (ci_pixels[i] & 0xff) + 1;
       }
     
       //----------------------------------------------------------------------------
@@ -2354,33 +2943,29 @@ public final class DrawingPanel extends FileFilter
     }
     
     //==============================================================================
-    // We're doing a very simple linear hashing thing here, which seems sufficient
-    // for our needs.  I make no claims for this approach other than that it seems
-    // an improvement over doing a brute linear search for each pixel on the one
-    // hand, and creating a Java object for each pixel (if we were to use a Java
-    // Hashtable) on the other.  Doubtless my little hash could be improved by
-    // tuning the capacity (at the very least).  Suggestions are welcome.
+    // A primitive open-addressing table from rgb values to palette indices, which
+    // GifColorTable consults for every pixel of every RGB frame.  Keys and indices
+    // live in two int arrays, so nothing is allocated per color, and the slot is
+    // taken from the high bits of a multiplicative hash, so colors that differ
+    // only in their low bits don't pile up in neighboring slots.  A palette holds
+    // at most 256 colors, which keeps the load under 1/4, so nearly every lookup
+    // ends at its first slot.
     //==============================================================================
     class ReverseColorMap {
     
-      private class ColorRecord {
-        int rgb;
-        int ipalette;
-        ColorRecord(int rgb, int ipalette)
-        {
-          this.rgb = rgb;
-          this.ipalette = ipalette;
-        }
-      }
-    
-      // I wouldn't really know what a good hashing capacity is, having missed out
-      // on data structures and algorithms class :)  Alls I know is, we've got a lot
-      // more space than we have time.  So let's try a sparse table with a maximum
-      // load of about 1/8 capacity.
-      private static final int HCAPACITY = 2053;  // a nice prime number
+      private static final int HBITS = 10;
+      private static final int HCAPACITY = 1 << HBITS;
+      private static final int EMPTY = -1;  // no rgb key is negative
     
       // our hash table proper
-      private ColorRecord[] hTable = new ColorRecord[HCAPACITY];
+      private int[] keys = new int[HCAPACITY];
+      private int[] indices = new int[HCAPACITY];
+    
+      //----------------------------------------------------------------------------
+      ReverseColorMap()
+      {
+        Arrays.fill(keys, EMPTY);
+      }
     
       //----------------------------------------------------------------------------
       // Assert: rgb is not negative (which is the same as saying, be sure the
@@ -2388,18 +2973,16 @@ public final class DrawingPanel extends FileFilter
       //----------------------------------------------------------------------------
       int getPaletteIndex(int rgb) 
       {   
-        ColorRecord rec;
-    
-        for ( int itable = rgb % hTable.length; 
-              (rec = hTable[itable]) != null && rec.rgb != rgb;
-              itable = ++itable % hTable.length
-            ) 
-          ;
+        int slot = slotOf(rgb);
+        int key;
+        while ((key = keys[slot]) != rgb)
+        {
+          if (key == EMPTY)
+            return -1;
+          slot = (slot + 1) & (HCAPACITY - 1);
+        }
     
-        if (rec != null)
-          return rec.ipalette;
-          
-        return -1;  
+        return indices[slot];
       }
     
       //----------------------------------------------------------------------------
@@ -2407,15 +2990,19 @@ public final class DrawingPanel extends FileFilter
       //----------------------------------------------------------------------------
       void put(int rgb, int ipalette) 
       {
-        int itable;
-        
-        for ( itable = rgb % hTable.length; 
-              hTable[itable] != null;
-              itable = ++itable % hTable.length
-            ) 
-          ; 
+        int slot = slotOf(rgb);
+        while (keys[slot] != EMPTY)
+          slot = (slot + 1) & (HCAPACITY - 1);
     
-        hTable[itable] = new ColorRecord(rgb, ipalette);   
+        keys[slot] = rgb;
+        indices[slot] = ipalette;
+      }
+    
+      //----------------------------------------------------------------------------
+      // Fibonacci hashing: the top bits of rgb times 2^32 over the golden ratio
+      private int slotOf(int rgb)
+      {
+        return (rgb * 0x9e3779b9) >>> (32 - HBITS);
       }
     }
     
@@ -2502,6 +3089,7 @@ public final class DrawingPanel extends FileFilter
       private boolean isInterlaced;
       private int    csecsDelay;
       private int    disposalCode = DM_LEAVE;
+      private int    transparentIndex = -1;
     
       //----------------------------------------------------------------------------
       /** Set the position of this frame within a larger animation display space.
@@ -2554,6 +3142,21 @@ public final class DrawingPanel extends FileFilter
         disposalCode = code;
       }
     
+      //----------------------------------------------------------------------------
+      /** Set a color index to be rendered as transparent in this frame only,
+       *  which lets a frame drawn over its predecessor (see DM_LEAVE) show the
+       *  predecessor through wherever nothing changed.
+       *
+       * @param index
+       *   Index of the color that should be rendered as transparent.  A value of
+       *   -1 defers to the encoder's setting.  (Default: -1)
+       * @see Gif89Encoder#setTransparentIndex
+       */
+      public void setTransparentIndex(int index)
+      {
+        transparentIndex = index;
+      }
+    
       //----------------------------------------------------------------------------
       Gif89Frame() {}  // package-visible default constructor
     
@@ -2571,13 +3174,17 @@ public final class DrawingPanel extends FileFilter
     
       //----------------------------------------------------------------------------
       void encode(OutputStream os, boolean epluribus, int color_depth,
-                  int transparent_index) throws IOException
+                  int transparent_index, GifPixelsEncoder pixels_encoder)
+      throws IOException
       {
+        if (transparentIndex != -1)
+          transparent_index = transparentIndex;
         writeGraphicControlExtension(os, epluribus, transparent_index);
         writeImageDescriptor(os);
-        new GifPixelsEncoder(
+        pixels_encoder.reset(
           theWidth, theHeight, ciPixels, isInterlaced, color_depth
-        ).encode(os);
+        );
+        pixels_encoder.encode(os);
       }
     
       //----------------------------------------------------------------------------
@@ -2624,15 +3231,29 @@ public final class DrawingPanel extends FileFilter
       private int    xCur, yCur; 
       private int    curPass;  
     
+      //----------------------------------------------------------------------------
+      GifPixelsEncoder() {}  // set up a bitmap with reset() before encoding
+    
       //----------------------------------------------------------------------------
       GifPixelsEncoder(int width, int height, byte[] pixels, boolean interlaced,
                        int color_depth)
+      {
+        reset(width, height, pixels, interlaced, color_depth);
+      }
+    
+      //----------------------------------------------------------------------------
+      // Point the encoder at another bitmap.  The hash and code tables are kept,
+      // so one encoder can compress any number of frames without reallocating.
+      void reset(int width, int height, byte[] pixels, boolean interlaced,
+                 int color_depth)
       {
         imgW = width;
         imgH = height;
         pixAry = pixels;
         wantInterlaced = interlaced;
         initCodeSize = Math.max(2, color_depth);
+        cur_accum = 0;
+        cur_bits = 0;
       }
      
       //----------------------------------------------------------------------------
@@ -2646,6 +3267,7 @@ public final class DrawingPanel extends FileFilter
         compress(initCodeSize + 1, os); // compress and write the pixel data
         
         os.write(0);                    // write block terminator
+        pixAry = null;                  // don't hold on to the frame
       }
     
       //****************************************************************************
@@ -3053,6 +3675,74 @@ public final class DrawingPanel extends FileFilter
       Object getPixelSource() { return ciPixels; }  
     }
     
+    //==============================================================================
+    // The encoders write a GIF a byte or a 255-byte packet at a time, which is a
+    // system call apiece on a bare FileOutputStream.  This stream gathers those
+    // writes in one direct buffer, reused for the life of the file, and hands
+    // them to the file's channel only when the buffer is full or flushed.
+    //==============================================================================
+    class GifOutputStream extends OutputStream {
+      private static final int BUFFER_SIZE = 1 << 16;
+    
+      private FileChannel channel;
+      private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    
+      //----------------------------------------------------------------------------
+      GifOutputStream(String filename) throws IOException
+      {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                   StandardOpenOption.TRUNCATE_EXISTING,
+                                   StandardOpenOption.WRITE);
+      }
+    
+      //----------------------------------------------------------------------------
+      public void write(int b) throws IOException
+      {
+        if (!buffer.hasRemaining())
+          drain();
+        buffer.put((byte) b);
+      }
+    
+      //----------------------------------------------------------------------------
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+        while (len > 0)
+        {
+          if (!buffer.hasRemaining())
+            drain();
+          int n = Math.min(len, buffer.remaining());
+          buffer.put(b, off, n);
+          off += n;
+          len -= n;
+        }
+      }
+    
+      //----------------------------------------------------------------------------
+      public void flush() throws IOException
+      {
+        drain();
+      }
+    
+      //----------------------------------------------------------------------------
+      public void close() throws IOException
+      {
+        try {
+          drain();
+        } finally {
+          channel.close();
+        }
+      }
+    
+      //----------------------------------------------------------------------------
+      private void drain() throws IOException
+      {
+        buffer.flip();
+        while (buffer.hasRemaining())
+          channel.write(buffer);
+        buffer.clear();
+      }
+    }
+    
     
     
     //----------------------------------------------------------------------------
@@ -0,0 +1,120 @@
+/*
+Drawing Panel Benchmarks
+Times DrawingPanel's plotting paths against each other on a headless
+panel. Run with no arguments.
+*/
+
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+
+public class DrawingPanelBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty(DrawingPanel.HEADLESS_PROPERTY, "true");
+		benchmarkScatter(1000, 1000, 1000000);
+		benchmarkColorMap(500, 500, 40);
+		benchmarkAnimation(500, 500, 500);
+		//a headless panel that is not saving never closes, so end here
+		System.exit(0);
+	}
+
+	public static void benchmarkScatter(int width, int height, int n) {
+		//a million-point scatter through antialiased drawOval against direct pixel writes
+		DrawingPanel panel = new DrawingPanel(width, height);
+		Graphics2D g = panel.getGraphics();
+		g.setColor(Color.BLUE);
+		Random random = new Random(6);
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = random.nextInt(width);
+			ys[i] = (int) (height / 2 + random.nextGaussian() * height / 6);
+		}
+		//drawOval is slow enough to time just once
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			g.drawOval(xs[i], ys[i], 1, 1);
+		}
+		long ovals = System.nanoTime() - start;
+		long scatter = Long.MAX_VALUE;
+		long points = Long.MAX_VALUE;
+		long polyline = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long t1 = System.nanoTime();
+			panel.drawScatter(xs, ys, n, 2, Color.BLUE);
+			long t2 = System.nanoTime();
+			panel.drawPoints(xs, ys, n, Color.BLUE);
+			long t3 = System.nanoTime();
+			panel.drawPolyline(xs, ys, n / 100, Color.BLUE);
+			long t4 = System.nanoTime();
+			scatter = Math.min(scatter, t2 - t1);
+			points = Math.min(points, t3 - t2);
+			polyline = Math.min(polyline, t4 - t3);
+		}
+		System.out.printf("drawOval     %d points %10.2f ms%n", n, ovals / 1e6);
+		System.out.printf("drawScatter  %d points %10.2f ms (%.0fx)%n", n, scatter / 1e6, (double) ovals / scatter);
+		System.out.printf("drawPoints   %d points %10.2f ms (%.0fx)%n", n, points / 1e6, (double) ovals / points);
+		System.out.printf("drawPolyline %d lines  %10.2f ms%n", n / 100, polyline / 1e6);
+	}
+
+	public static void benchmarkColorMap(int width, int height, int frames) throws IOException {
+		//palette detection, a color lookup per pixel, over the ARGB frames of a growing plot
+		DrawingPanel panel = new DrawingPanel(width, height);
+		Graphics2D g = panel.getGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, width, height);
+		Random random = new Random(9);
+		int n = 250;
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		int[][] pixels = new int[frames][];
+		for (int f = 0; f < frames; f++) {
+			for (int i = 0; i < n; i++) {
+				xs[i] = random.nextInt(width);
+				ys[i] = (int) (height / 2 + random.nextGaussian() * height / 6);
+			}
+			panel.drawScatter(xs, ys, n, 2, new Color(Color.HSBtoRGB((float) f / frames, 0.8f, 0.8f)));
+			panel.drawPolyline(xs, ys, 20, Color.GRAY);
+			pixels[f] = panel.getPixels().clone();
+		}
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			DrawingPanel.Gif89Encoder encoder = panel.new Gif89Encoder();
+			DrawingPanel.Gif89Frame[] gifFrames = new DrawingPanel.Gif89Frame[frames];
+			for (int f = 0; f < frames; f++) {
+				gifFrames[f] = panel.new DirectGif89Frame(width, height, pixels[f]);
+			}
+			long start = System.nanoTime();
+			for (DrawingPanel.Gif89Frame frame: gifFrames) {
+				encoder.addFrame(frame);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("colorMap     %d frames %10.2f ms (%.2f ns/pixel)%n", frames, best / 1e6,
+				(double) best / frames / width / height);
+	}
+
+	public static void benchmarkAnimation(int width, int height, int frames) throws IOException {
+		//an incremental plot saved as an animated GIF, one frame captured per sleep
+		File file = File.createTempFile("animation", ".gif");
+		System.setProperty(DrawingPanel.SAVE_PROPERTY, file.getPath());
+		System.setProperty(DrawingPanel.ANIMATED_PROPERTY, "true");
+		DrawingPanel panel = new DrawingPanel(width, height);
+		Graphics2D g = panel.getGraphics();
+		Random random = new Random(8);
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++) {
+			g.setColor(new Color(random.nextInt(0x1000000)));
+			g.fillOval(random.nextInt(width - 8), random.nextInt(height - 8), 8, 8);
+			panel.sleep(50);
+		}
+		panel.saveAnimated(file.getPath());
+		long nanos = System.nanoTime() - start;
+		System.out.printf("animation    %d frames %10.2f ms (%.2f ms/frame) %8d KB%n", frames, nanos / 1e6,
+				nanos / 1e6 / frames, file.length() / 1024);
+		file.delete();
+	}
+}
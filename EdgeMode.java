@@ -0,0 +1,33 @@
+/*
+Edge Mode
+What a filter does within half a window of either end of a series, where
+its window would run off the data. Every mode except NONE produces a value
+for every sample, as long as some odd window that fits in the series can
+carry the derivative (3 samples for a first or second derivative).
+*/
+
+public enum EdgeMode {
+	NONE, //leave the ends out; they are marked invalid
+	SHRINK, //use the widest symmetric window that fits, lowering the order if it must (one-sided at the ends for derivatives)
+	MIRROR, //reflect the series about its end samples: ..., x2, x1, x0, x1, x2, ...
+	NEAREST, //repeat the end samples: ..., x0, x0, x0, x1, x2, ...
+	EXTRAPOLATE; //fit the end window once and evaluate that polynomial off center
+
+	//index into a series of length n standing in for i, which may lie outside it (MIRROR and NEAREST)
+	public int index(int i, int n) {
+		if (i >= 0 && i < n) {
+			return i;
+		} else if (this == NEAREST) {
+			return i < 0 ? 0 : n - 1;
+		} else if (this == MIRROR) {
+			if (n == 1) {
+				return 0;
+			}
+			int period = 2 * n - 2;
+			int k = Math.floorMod(i, period);
+			return k < n ? k : period - k;
+		} else {
+			throw new IllegalStateException(this + " does not pad the series");
+		}
+	}
+}
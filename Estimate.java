@@ -0,0 +1,53 @@
+/*
+Estimate
+An integral estimate together with its error bar and what it cost.
+*/
+
+public class Estimate {
+
+	private final double value;
+	private final double standardError;
+	private final double confidence;
+	private final double z; //normal quantile for the confidence level
+	private final long samples;
+	private final long nanos;
+
+	public Estimate(double value, double standardError, double confidence, double z, long samples, long nanos) {
+		this.value = value;
+		this.standardError = standardError;
+		this.confidence = confidence;
+		this.z = z;
+		this.samples = samples;
+		this.nanos = nanos;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public double getStandardError() {
+		return standardError;
+	}
+
+	public double getHalfWidth() {
+		//half width of the confidence interval
+		return z * standardError;
+	}
+
+	public double getConfidence() {
+		return confidence;
+	}
+
+	public long getSamples() {
+		return samples;
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+	public String toString() {
+		return String.format("%.6g +/- %.3g (%.0f%% confidence, standard error %.3g) from %d samples in %.3f ms",
+				value, getHalfWidth(), confidence * 100, standardError, samples, nanos / 1e6);
+	}
+}
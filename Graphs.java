@@ -99,19 +99,21 @@ public class Graphs {
 		//Plots projectile paths for all intended angles
 			int direction = 1;
 			double[][] array = points(j);
+			Color angleC = new Color(colorCombos[j][0], colorCombos[j][1], colorCombos[j][2]);
+			g.setColor(angleC);
+			//Sets color to match the corresponding angle
+			int[] xs = new int[array.length];
+			int[] ys = new int[array.length];
 			for (int i = 0; i < array.length; i++) {
-				int size = 2;
-				int adjust = 0;
-				Color angleC = new Color(colorCombos[j][0], colorCombos[j][1], colorCombos[j][2]);
-				g.setColor(angleC);
-				//Sets color to match the corresponding angle
+				xs[i] = (int) Math.round(array[i][0] * 10) + 50;
+				ys[i] = (int) Math.round(600 - 10 * array[i][1]) - 50;
 				if (Math.round(array.length/2) == i) {
 				//When projectile reaches maximum height, plot a bigger point
-					size = 10;
-					adjust = 5;
+					g.fillOval(xs[i] - 5, ys[i] - 5, 10, 10);
 				}
-				g.fillOval((int) Math.round(array[i][0] * 10) + 50 - adjust, (int) Math.round(600 - 10 * array[i][1]) - 50 - adjust, size, size);
 			}
+			//Small points go straight into the panel's pixels
+			panel.drawScatter(xs, ys, array.length, 2, angleC);
 		}
 		g.setColor(Color.white);
 		g.fillRect(590, 100, 360, 96);
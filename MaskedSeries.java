@@ -0,0 +1,52 @@
+/*
+Masked Series
+A filtered series together with which of its samples hold real values.
+Samples a filter could not produce are marked invalid instead of being set
+to a value that happens to fall off the plot.
+*/
+
+public class MaskedSeries {
+
+	private final double[] values;
+	private final boolean[] valid;
+
+	public MaskedSeries(double[] values, boolean[] valid) {
+		if (values.length != valid.length) {
+			throw new IllegalArgumentException("Values and mask differ in length: "
+					+ values.length + ", " + valid.length);
+		}
+		this.values = values;
+		this.valid = valid;
+	}
+
+	public int length() {
+		return values.length;
+	}
+
+	public double get(int i) {
+		return values[i];
+	}
+
+	public boolean isValid(int i) {
+		return valid[i];
+	}
+
+	//the arrays themselves, not copies
+	public double[] getValues() {
+		return values;
+	}
+
+	public boolean[] getValid() {
+		return valid;
+	}
+
+	public int countValid() {
+		int count = 0;
+		for (boolean v: valid) {
+			if (v) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+Monte Carlo Benchmarks
+Times the pieces of the Monte Carlo integrators against each other.
+Run with no arguments; every benchmark prints its own summary line.
+*/
+
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+public class MonteCarloBenchmark {
+
+	private static final int WARMUP = 5;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		benchmarkEvaluate("x ^ 2 + 3 * x - 4 / ( x + 1 )", 100000);
+		benchmarkParallel("x ^ 2", "x", 100000000L);
+		benchmarkConvergence("semicircle1.txt", "semicircle2.txt", 16);
+		benchmarkQuadrature("semicircle1.txt", "semicircle2.txt");
+		benchmarkVariance("x ^ 2", "x", 1000000);
+		benchmarkBatch("x * x * x - 3 * x / ( x + 2 ) + 1", 1 << 20);
+	}
+
+	public static void benchmarkEvaluate(String expression, int samples) {
+		//string-walking evaluate against the compiled closure tree
+		Queue<String> postfix = MonteCarloIntegrationInput.inToPost(expression);
+		DoubleUnaryOperator compiled = MonteCarloIntegrationInput.compile(postfix);
+		double interpreted = 0;
+		double closures = 0;
+		double check = 0;
+		for (int round = 0; round < WARMUP + ROUNDS; round++) {
+			long start = System.nanoTime();
+			double sum = 0;
+			for (int i = 0; i < samples; i++) {
+				sum += MonteCarloIntegrationInput.evaluate(postfix, i * 1e-3);
+			}
+			long middle = System.nanoTime();
+			for (int i = 0; i < samples; i++) {
+				check += compiled.applyAsDouble(i * 1e-3);
+			}
+			long end = System.nanoTime();
+			check -= sum;
+			if (round >= WARMUP) {
+				interpreted += (double) (middle - start) / samples;
+				closures += (double) (end - middle) / samples;
+			}
+		}
+		System.out.printf("evaluate  %-32s %8.2f ns/call%n", expression, interpreted / ROUNDS);
+		System.out.printf("compiled  %-32s %8.2f ns/call (%.1fx, drift %.1e)%n", expression,
+				closures / ROUNDS, interpreted / closures, check);
+	}
+
+	public static void benchmarkParallel(String first, String second, long samples) {
+		//scaling of integrateParallel with thread count (exact area is 1/6)
+		MonteCarloIntegrationInput.setFunctions(first, second);
+		int cores = Runtime.getRuntime().availableProcessors();
+		double single = 0;
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			MonteCarloIntegrationInput.integrateParallel(0, 0, 1, 1, samples / 10, 42, threads);
+			long start = System.nanoTime();
+			double estimate = MonteCarloIntegrationInput.integrateParallel(0, 0, 1, 1, samples, 42, threads);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			if (threads == 1) {
+				single = seconds;
+			}
+			System.out.printf("parallel  %2d threads %.3e samples/s (%.1fx) estimate %.6f%n",
+					threads, samples / seconds, single / seconds, estimate);
+		}
+	}
+
+	public static void benchmarkConvergence(String file0, String file1, int replicates) throws Exception {
+		//RMS error of pseudo-random, Halton and Sobol sampling as the sample count grows
+		double[] data0 = MonteCarloIntegration.getData(new Scanner(file0));
+		double[] data1 = MonteCarloIntegration.getData(new Scanner(file1));
+		double exact = 0;
+		for (int x = 0; x < MonteCarloIntegration.X; x++) {
+			//hit-or-miss picks whole columns 0 .. X - 1, so its expectation is this column sum
+			double a = Math.max(0, Math.min(MonteCarloIntegration.Y, data0[x]));
+			double b = Math.max(0, Math.min(MonteCarloIntegration.Y, data1[x]));
+			exact += Math.abs(a - b);
+		}
+		String[] names = {"random", "halton", "sobol"};
+		List<Supplier<PointGenerator>> sequences = new ArrayList<Supplier<PointGenerator>>();
+		sequences.add(() -> PointGenerator.random(7));
+		sequences.add(PointGenerator::halton);
+		sequences.add(PointGenerator::sobol);
+		System.out.printf("convergence %s - %s, exact %.1f, RMS relative error over %d replicates%n",
+				file0, file1, exact, replicates);
+		System.out.printf("%10s", "samples");
+		for (String name: names) {
+			System.out.printf("%12s", name);
+		}
+		System.out.println();
+		for (int samples = 1 << 10; samples <= 1 << 20; samples <<= 2) {
+			System.out.printf("%10d", samples);
+			for (Supplier<PointGenerator> sequence: sequences) {
+				SplittableRandom shifts = new SplittableRandom(11);
+				double squares = 0;
+				for (int r = 0; r < replicates; r++) {
+					MonteCarloIntegration.setGenerator(PointGenerator.rotated(sequence.get(), shifts.nextLong()));
+					int in = 0;
+					for (int i = 0; i < samples; i++) {
+						if (MonteCarloIntegration.randomPointIn(data0, data1, 0, 0,
+								MonteCarloIntegration.X, MonteCarloIntegration.Y, SampleSink.NONE)) {
+							in++;
+						}
+					}
+					double error = ((double) in / samples * MonteCarloIntegration.X * MonteCarloIntegration.Y - exact) / exact;
+					squares += error * error;
+				}
+				System.out.printf("%12.2e", Math.sqrt(squares / replicates));
+			}
+			System.out.println();
+		}
+		MonteCarloIntegration.setGenerator(PointGenerator.random());
+	}
+
+	public static void benchmarkQuadrature(String file0, String file1) throws Exception {
+		//accuracy per nanosecond of quadrature against hit-or-miss on the two semicircles
+		double[] data0 = MonteCarloIntegration.getData(new Scanner(file0));
+		double[] data1 = MonteCarloIntegration.getData(new Scanner(file1));
+		double r = 500;
+		double exact = 2 * (circleArea(r, data0.length - 1 - r) - circleArea(r, -r));
+		System.out.printf("quadrature %s - %s, exact %.3f%n", file0, file1, exact);
+		for (Quadrature.Rule rule: Quadrature.Rule.values()) {
+			int calls = 20000;
+			double area = 0;
+			for (int i = 0; i < calls; i++) {
+				area = MonteCarloIntegration.integrateQuadrature(data0, data1, rule);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				area = MonteCarloIntegration.integrateQuadrature(data0, data1, rule);
+			}
+			double nanos = (double) (System.nanoTime() - start) / calls;
+			System.out.printf("%-12s %12.1f ns  relative error %.2e%n", rule, nanos, Math.abs(area - exact) / exact);
+		}
+		for (int samples = 1 << 12; samples <= 1 << 20; samples <<= 4) {
+			MonteCarloIntegration.setGenerator(PointGenerator.sobol());
+			long start = System.nanoTime();
+			int in = 0;
+			for (int i = 0; i < samples; i++) {
+				if (MonteCarloIntegration.randomPointIn(data0, data1, 0, 0,
+						MonteCarloIntegration.X, MonteCarloIntegration.Y, SampleSink.NONE)) {
+					in++;
+				}
+			}
+			double nanos = System.nanoTime() - start;
+			double area = (double) in / samples * MonteCarloIntegration.X * MonteCarloIntegration.Y;
+			System.out.printf("sobol 2^%-4d %12.1f ns  relative error %.2e%n",
+					Integer.numberOfTrailingZeros(samples), nanos, Math.abs(area - exact) / exact);
+		}
+		MonteCarloIntegration.setGenerator(PointGenerator.random());
+	}
+
+	private static double circleArea(double r, double u) {
+		//antiderivative of sqrt(r^2 - u^2)
+		return (u * Math.sqrt(r * r - u * u) + r * r * Math.asin(u / r)) / 2;
+	}
+
+	public static void benchmarkVariance(String first, String second, int samples) {
+		//standard error of each MonteCarloIntegrationInput estimator at the same sample count
+		MonteCarloIntegrationInput.setFunctions(first, second);
+		MonteCarloIntegrationInput.setDomain(0, 10, 0, 100);
+		MonteCarloIntegrationInput.setGenerator(PointGenerator.random(5));
+		System.out.printf("variance  %s vs %s on [0, 10] x [0, 100], %d samples%n", first, second, samples);
+		print("uniform", MonteCarloIntegrationInput.integrateStratified(1, samples, false, 0.95, SampleSink.NONE));
+		print("stratified", MonteCarloIntegrationInput.integrateStratified(1000, samples, false, 0.95, SampleSink.NONE));
+		print("envelope", MonteCarloIntegrationInput.integrateStratified(1000, samples, true, 0.95, SampleSink.NONE));
+		print("mean value", MonteCarloIntegrationInput.integrateMeanValue(1000, samples, 0.95));
+		MonteCarloIntegrationInput.setGenerator(PointGenerator.random());
+	}
+
+	private static void print(String name, Estimate estimate) {
+		System.out.printf("%-12s %14.6f  standard error %.2e  %8.2f ms%n", name, estimate.getValue(),
+				estimate.getStandardError(), estimate.getNanos() / 1e6);
+	}
+
+	public static void benchmarkBatch(String expression, int length) {
+		//x values per second through closures, scalar lane loops and (if available) SIMD lanes
+		Queue<String> postfix = MonteCarloIntegrationInput.inToPost(expression);
+		DoubleUnaryOperator compiled = MonteCarloIntegrationInput.compile(postfix);
+		BatchEvaluator scalar = new BatchEvaluator(postfix);
+		BatchEvaluator best = BatchEvaluator.compile(postfix);
+		double[] xs = new double[length];
+		double[] out = new double[length];
+		for (int i = 0; i < length; i++) {
+			xs[i] = i * 1e-4;
+		}
+		double[] nanos = new double[3];
+		double check = 0;
+		for (int round = 0; round < WARMUP + ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < length; i++) {
+				out[i] = compiled.applyAsDouble(xs[i]);
+			}
+			long closures = System.nanoTime();
+			check = out[length - 1];
+			scalar.evaluate(xs, out, length);
+			long lanes = System.nanoTime();
+			check -= out[length - 1];
+			best.evaluate(xs, out, length);
+			long end = System.nanoTime();
+			if (round >= WARMUP) {
+				nanos[0] += closures - start;
+				nanos[1] += lanes - closures;
+				nanos[2] += end - lanes;
+			}
+		}
+		String[] names = {"closures", "scalar lanes", best.isVectorized() ? "vector lanes" : "vector (n/a)"};
+		for (int i = 0; i < names.length; i++) {
+			System.out.printf("batch     %-14s %.3e x/s (%.1fx)%n", names[i],
+					length * ROUNDS / nanos[i] * 1e9, nanos[0] / nanos[i]);
+		}
+		System.out.printf("batch     drift %.1e%n", check);
+	}
+}
@@ -8,69 +8,133 @@ points are within the observed barrier.
 import java.util.*;
 import java.io.*;
 import java.awt.*;
+import java.util.function.Supplier;
 
 public class MonteCarloIntegration {
 
 	public static final int X = 1000;
 	public static final int Y = 1000;
-	public static final int SIZE = 1000;
+	public static final long MAX_SAMPLES = 100000000; //cap for integrateAdaptive
+	private static PointGenerator generator = PointGenerator.random();
+	private static final double[] point = new double[2]; //scratch for generator
 
 	public static void main(String[] args) throws Exception {
 		Scanner console = new Scanner(System.in);
 		//data0 > data1
 		double[] data0 = getData(console);
 		double[] data1 = getData(console);
+		checkSeries(data0, data1);
 		DrawingPanel panel = new DrawingPanel(X, Y);
 		Graphics g = panel.getGraphics();
 		System.out.println(integrate(data0, data1, g));
+		SampleSink sink = new DensitySink(g, X, Y, Color.GREEN, Color.GRAY, 0);
+		System.out.println(integrateAdaptive(data0, data1, 0.01, 0.95, sink));
+		sink.flush();
+		System.out.println(integrateQuadrature(data0, data1, Quadrature.Rule.SIMPSON));
 		g.setColor(Color.RED);
-		drawData(g, data0);
+		drawData(panel, data0);
 		g.setColor(Color.BLUE);
-		drawData(g, data1);
+		drawData(panel, data1);
 	}
 
-	public static void drawData(Graphics g, double[] data) {
+	public static void drawData(DrawingPanel panel, double[] data) {
 		// graphs all data stored in double array onto the drawing panel
+		int[] xs = new int[data.length];
+		int[] ys = new int[data.length];
 		for (int i = 0; i < data.length; i++) {
-			// graphs a point
-			g.drawOval(i, (int) (Y - 1 - data[i]), 1, 1);
+			xs[i] = i;
+			ys[i] = (int) (Y - 1 - data[i]);
 		}
+		// 2 x 2 squares cover what drawOval(x, y, 1, 1) did, written straight into the pixels
+		panel.drawScatter(xs, ys, data.length, 2, panel.getGraphics().getColor());
 	}
 
 	public static double[] getData(Scanner console) throws Exception {
 		// collects data from the following hardcoded .txt files:
 		//"Xsquared.txt"
 		//"Xaxis.txt"
-		Scanner in = new Scanner(new File(console.next()));
-		double[] data = new double[SIZE];
-		for (int i = 0; i < SIZE; i++) {
-			data[i] = in.nextDouble();
-		}
-		return data;
+		//the file decides how many points there are
+		return NumericCache.loadColumn(console.next(), 0);
 	}
 
-	public static boolean randomPointIn(double[] data0, double[] data1, int x0, int y0, int x1, int y1, Graphics g) {
-		int x = (int) (Math.random() * (x1 - x0) + x0);
-		double y = Math.random() * (y1 - y0) + y0;
-		g.drawOval(x, (int) (Y - 1 - y), 1, 1);
-		double a = data1[x];
-		double b = data0[x];
-		if (a > b && a > y && y > b || a < b && a < y && y < b) {
-			return true;
-		} else {
-			return false;
+	public static void checkSeries(double[] data0, double[] data1) {
+		//both curves are sampled at the same evenly spaced points across X
+		if (data0.length != data1.length || data0.length < 2) {
+			throw new IllegalArgumentException("Data files need the same number of values, at least 2; got "
+					+ data0.length + " and " + data1.length);
 		}
 	}
 
+	public static void setGenerator(PointGenerator sampler) {
+		//chooses where randomPointIn draws its points from
+		generator = sampler;
+	}
+
+	public static boolean randomPointIn(double[] data0, double[] data1, int x0, int y0, int x1, int y1, SampleSink sink) {
+		generator.next(point);
+		int x = (int) (point[0] * (x1 - x0) + x0);
+		double y = point[1] * (y1 - y0) + y0;
+		checkSeries(data0, data1);
+		//the series spans 0..X in data0.length - 1 steps, as in integrateQuadrature
+		int i = (int) ((long) x * (data0.length - 1) / X);
+		double a = data1[i];
+		double b = data0[i];
+		boolean in = a > b && a > y && y > b || a < b && a < y && y < b;
+		sink.add(x, (int) (Y - 1 - y), in);
+		return in;
+	}
+
 	public static double integrate(double[] data0, double[] data1, Graphics g) {
 		//for now, just between curve and x-axis
 		int in = 0;
 		int total = 1000;
+		SampleSink sink = new DensitySink(g, X, Y, Color.GREEN, Color.GRAY, 0);
 		for (int i = 0; i < total; i++) {
-			if (randomPointIn(data0, data1, 0, 0, X, Y, g)) {
+			if (randomPointIn(data0, data1, 0, 0, X, Y, sink)) {
 				in++;
 			}
 		}
+		sink.flush();
 		return (double) in / total * 100 * 10000;
 	}
-}
\ No newline at end of file
+
+	public static Estimate integrateAdaptive(double[] data0, double[] data1, double relativeError, double confidence, SampleSink sink) {
+		//samples until the estimate is within relativeError at the given confidence
+		return RunningStats.converge(() -> randomPointIn(data0, data1, 0, 0, X, Y, sink) ? (double) X * Y : 0,
+				relativeError, confidence, MAX_SAMPLES);
+	}
+
+	public static Estimate integrateReplicated(Supplier<PointGenerator> sequence, int replicates, int samples,
+			double confidence, long seed, double[] data0, double[] data1, SampleSink sink) {
+		//averages Cranley-Patterson rotated copies of sequence, with the error bar from their spread
+		SplittableRandom shifts = new SplittableRandom(seed);
+		PointGenerator previous = generator;
+		try {
+			return RunningStats.replicate(() -> {
+				generator = PointGenerator.rotated(sequence.get(), shifts.nextLong());
+				int in = 0;
+				for (int i = 0; i < samples; i++) {
+					if (randomPointIn(data0, data1, 0, 0, X, Y, sink)) {
+						in++;
+					}
+				}
+				return (double) in / samples * X * Y;
+			}, replicates, samples, confidence);
+		} finally {
+			generator = previous;
+		}
+	}
+
+	public static double integrateQuadrature(double[] data0, double[] data1, Quadrature.Rule rule) {
+		//deterministic counterpart of integrate, clipped to the same X by Y box
+		double[] clipped0 = new double[data0.length];
+		double[] clipped1 = new double[data1.length];
+		for (int i = 0; i < data0.length; i++) {
+			clipped0[i] = Math.max(0, Math.min(Y, data0[i]));
+		}
+		for (int i = 0; i < data1.length; i++) {
+			clipped1[i] = Math.max(0, Math.min(Y, data1[i]));
+		}
+		return Quadrature.areaBetween(clipped0, clipped1, (double) X / (data0.length - 1), rule);
+	}
+}
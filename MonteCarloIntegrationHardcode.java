@@ -14,12 +14,18 @@ public class MonteCarloIntegrationHardcode {
 	public static final int X = 500;
 	public static final int Y = 500;
 	public static final int SIZE = 500;
+	public static final long MAX_SAMPLES = 100000000; //cap for integrateAdaptive
+	private static PointGenerator generator = PointGenerator.random();
+	private static final double[] point = new double[2]; //scratch for generator
 
 	public static void main(String[] args) {
 		// Scanner console = new Scanner(System.in);
 		DrawingPanel panel = new DrawingPanel(X, Y);
 		Graphics g = panel.getGraphics();
 		System.out.println(integrate(g));
+		SampleSink sink = new DensitySink(g, X, Y, Color.GREEN, Color.GRAY, 0);
+		System.out.println(integrateAdaptive(0.01, 0.95, sink));
+		sink.flush();
 		drawData(g);
 	}
 
@@ -45,28 +51,39 @@ public class MonteCarloIntegrationHardcode {
 		}
 	}
 
-	public static boolean randomPointIn(int x0, int y0, int x1, int y1, Graphics g) {
-		int x = (int) (Math.random() * (x1 - x0) + x0);
-		double y = Math.random() * (y1 - y0) + y0;
-		g.drawOval(x, (int) (Y - 1 - y), 1, 1);
+	public static void setGenerator(PointGenerator sampler) {
+		//chooses where randomPointIn draws its points from
+		generator = sampler;
+	}
+
+	public static boolean randomPointIn(int x0, int y0, int x1, int y1, SampleSink sink) {
+		generator.next(point);
+		int x = (int) (point[0] * (x1 - x0) + x0);
+		double y = point[1] * (y1 - y0) + y0;
 		double a = function1(x);
 		double b = function2(x);
-		if (a > b && a > y && y > b || a < b && a < y && y < b) {
-			return true;
-		} else {
-			return false;
-		}
+		boolean in = a > b && a > y && y > b || a < b && a < y && y < b;
+		sink.add(x, (int) (Y - 1 - y), in);
+		return in;
 	}
 
 	public static double integrate(Graphics g) {
 		//for now, just between curve and x-axis
 		int in = 0;
 		int total = 1000;
+		SampleSink sink = new DensitySink(g, X, Y, Color.GREEN, Color.GRAY, 0);
 		for (int i = 0; i < total; i++) {
-			if (randomPointIn(0, 0, X, Y, g)) {
+			if (randomPointIn(0, 0, X, Y, sink)) {
 				in++;
 			}
 		}
-		return (double) in / total * 100 * 10000;
+		sink.flush();
+		return (double) in / total * X * Y; //the same area scale as integrateAdaptive
+	}
+
+	public static Estimate integrateAdaptive(double relativeError, double confidence, SampleSink sink) {
+		//samples until the estimate is within relativeError at the given confidence
+		return RunningStats.converge(() -> randomPointIn(0, 0, X, Y, sink) ? (double) X * Y : 0,
+				relativeError, confidence, MAX_SAMPLES);
 	}
-}
\ No newline at end of file
+}
@@ -7,21 +7,33 @@ points are within the observed barrier.
 */
 
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
 import java.io.*;
 import java.awt.*;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
 import javax.script.*;
 
 public class MonteCarloIntegrationInput {
 
 	private static final int X = 500;
 	private static final int Y = 500; //Dimensions of window
-	private static final Map<String, Integer> priority = new HashMap<>() {{
-		this.put("^", 1);
-		this.put("/", 2);
-		this.put("*", 2);
-		this.put("+", 3);
-		this.put("-", 3);
-	}};
+	private static final int FRAME_MILLIS = 100; //redraw rate of the sample heatmap
+	private static final long MAX_SAMPLES = 1000000000; //cap for integrateAdaptive
+	private static final int BATCH = 4096; //samples per call to the batch evaluators
+	private static final int ENVELOPE_PROBES = 8; //evaluations per strip when finding the envelope
+	private static final double JUMP_PIXELS = 1; //largest vertical gap left between plotted points
+	private static final int MAX_DEPTH = 6; //bisections per pixel column, down to 1/64 pixel
+	private static final int REFINE_BUDGET = 16; //bisections per pixel column, on average over a plot
+	private static final int CACHE_SIZE = 1024; //expressions kept compiled by compiled(String)
+	private static final Map<String, Compiled> compiled = Collections.synchronizedMap(
+		new LinkedHashMap<String, Compiled>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+				return size() > CACHE_SIZE; //least recently used goes first
+			}
+		});
+	private static final int MAX_NAME = 5; //longest function name, log10
 
 	private static int dots;
 	private static int xMin;
@@ -30,33 +42,87 @@ public class MonteCarloIntegrationInput {
 	private static int yMax; //Domain and range
 	private static Queue<String> f1;
 	private static Queue<String> f2; //functions
+	private static DoubleUnaryOperator c1;
+	private static DoubleUnaryOperator c2; //compiled functions
+	private static BatchEvaluator b1;
+	private static BatchEvaluator b2; //batch evaluators for integrateBatched
+	private static PointGenerator generator = PointGenerator.random();
+	private static final double[] point = new double[2]; //scratch for generator
 
 	public static void main(String[] args) {
 		Scanner console = new Scanner(System.in);
-		System.out.println("You MUST include a space in between every number/operator");
+		System.out.println("Use x, numbers, pi, e, + - * / ^, parentheses and sin cos tan asin acos atan");
+		System.out.println("sinh cosh tanh exp log (ln) log10 sqrt cbrt abs, e.g. -x^2 + 3sin(x)");
 		System.out.println("Equation 1: ");
-		f1 = inToPost(console.nextLine());
+		String first = console.nextLine();
+		compile(first); //reject a bad equation before asking for the next
 		System.out.println("Equation 2: ");
-		f2 = inToPost(console.nextLine());
+		setFunctions(first, console.nextLine());
 		System.out.println("Min x: ");
-		xMin = console.nextInt();
+		int x0 = console.nextInt();
 		System.out.println("Max x: ");
-		xMax = console.nextInt();
+		int x1 = console.nextInt();
 		System.out.println("Min y: ");
-		yMin = console.nextInt();
+		int y0 = console.nextInt();
 		System.out.println("Max y: ");
-		yMax = console.nextInt();
-		System.out.println("How many random points?");
+		setDomain(x0, x1, y0, console.nextInt());
+		System.out.println("How many random points? (0 stops at 1% error, 95% confidence)");
 		dots = console.nextInt();
+		System.out.println("How many threads? (1 draws every point)");
+		int threads = console.nextInt();
 		DrawingPanel panel = new DrawingPanel(X, Y);
 		Graphics g = panel.getGraphics();
 		drawAxis(g);
-		System.out.println("Estimate: " + integrate(g));
+		if (dots <= 0) {
+			SampleSink sink = new DensitySink(g, X, Y, Color.GREEN, Color.GRAY, FRAME_MILLIS);
+			System.out.println("Estimate: " + integrateAdaptive(0.01, 0.95, sink));
+			sink.flush();
+		} else if (threads > 1) {
+			System.out.println("Estimate: " + integrateParallel(xMin, yMin, xMax, yMax, dots, System.nanoTime(), threads));
+		} else {
+			System.out.println("Estimate: " + integrate(g));
+		}
 		drawDatas(g);
 	}
 
+	public static void setDomain(int x0, int x1, int y0, int y1) {
+		xMin = x0;
+		xMax = x1;
+		yMin = y0;
+		yMax = y1;
+	}
+
+	public static void setFunctions(String first, String second) {
+		//like setFunctions(inToPost(first), inToPost(second)), through the cache
+		Compiled a = compiled(first);
+		Compiled b = compiled(second);
+		f1 = a.postfix;
+		f2 = b.postfix;
+		c1 = a.function;
+		c2 = b.function;
+		b1 = a.batch;
+		b2 = b.batch;
+	}
+
+	public static void setFunctions(Queue<String> first, Queue<String> second) {
+		f1 = first;
+		f2 = second;
+		c1 = compile(f1);
+		c2 = compile(f2);
+		b1 = BatchEvaluator.compile(f1);
+		b2 = BatchEvaluator.compile(f2);
+	}
+
 	public static void plot(Graphics g, double x, double y) {
-		g.drawOval((int) Math.round((x - xMin) * X / (xMax - xMin)), (int) Math.round(Y - 1 - (y - yMin) * Y / (yMax - yMin)), 1, 1);
+		g.drawOval(pixelX(x), pixelY(y), 1, 1);
+	}
+
+	public static int pixelX(double x) {
+		return (int) Math.round((x - xMin) * X / (xMax - xMin));
+	}
+
+	public static int pixelY(double y) {
+		return (int) Math.round(Y - 1 - (y - yMin) * Y / (yMax - yMin));
 	}
 
 	public static void drawAxis(Graphics g) {
@@ -78,9 +144,12 @@ public class MonteCarloIntegrationInput {
 				operands.push(x);
 				continue;
 			}
-			try {
+			Operator op = Operator.of(s);
+			if (op == null) {
 				operands.push(Double.parseDouble(s));
-			} catch (NumberFormatException e) {
+			} else if (op.isPrefix()) {
+				operands.push(op.apply(operands.pop()));
+			} else {
 				Double b = operands.pop();
 				Double a = operands.pop();
 				operands.push(simplify(a, b, s));
@@ -89,27 +158,197 @@ public class MonteCarloIntegrationInput {
 		return operands.pop();
 	}
 
+	public static DoubleUnaryOperator compile(String expression) {
+		//compile(inToPost(expression)), cached by expression text so
+		//repeated jobs skip tokenizing and parsing
+		return compiled(expression).function;
+	}
+
+	private static Compiled compiled(String expression) {
+		Compiled entry = compiled.get(expression);
+		if (entry == null) {
+			entry = new Compiled(inToPost(expression));
+			compiled.put(expression, entry);
+		}
+		return entry;
+	}
+
+	private static class Compiled {
+		//every form of one expression, as setFunctions needs them
+		private final Queue<String> postfix;
+		private final DoubleUnaryOperator function;
+		private final BatchEvaluator batch;
+
+		private Compiled(Queue<String> postfix) {
+			this.postfix = postfix;
+			function = compile(postfix);
+			batch = BatchEvaluator.compile(postfix);
+		}
+	}
+
+	public static DoubleUnaryOperator compile(Queue<String> function) {
+		//turns the postfix queue into a tree of closures once, so sampling
+		//neither re-parses tokens nor boxes operands
+		Deque<DoubleUnaryOperator> operands = new ArrayDeque<DoubleUnaryOperator>();
+		for (String s: function) {
+			if (s.equals("x")) {
+				operands.push(DoubleUnaryOperator.identity());
+				continue;
+			}
+			Operator op = Operator.of(s);
+			if (op == null) {
+				double constant = Double.parseDouble(s);
+				operands.push(x -> constant);
+			} else if (op.isPrefix()) {
+				operands.push(combine(operands.pop(), op));
+			} else {
+				DoubleUnaryOperator b = operands.pop();
+				DoubleUnaryOperator a = operands.pop();
+				operands.push(combine(a, b, op));
+			}
+		}
+		return operands.pop();
+	}
+
+	private static DoubleUnaryOperator combine(DoubleUnaryOperator a, DoubleUnaryOperator b, Operator op) {
+		//compiled counterpart of simplify
+		switch (op) {
+			case POWER: return x -> Math.pow(a.applyAsDouble(x), b.applyAsDouble(x));
+			case ADD: return x -> a.applyAsDouble(x) + b.applyAsDouble(x);
+			case SUBTRACT: return x -> a.applyAsDouble(x) - b.applyAsDouble(x);
+			case MULTIPLY: return x -> a.applyAsDouble(x) * b.applyAsDouble(x);
+			case DIVIDE: return x -> a.applyAsDouble(x) / b.applyAsDouble(x);
+			default: return x -> 0; //Error
+		}
+	}
+
+	private static DoubleUnaryOperator combine(DoubleUnaryOperator a, Operator op) {
+		//the common prefix operators get their own closures; the rest
+		//go through Operator.apply
+		switch (op) {
+			case NEGATE: return x -> -a.applyAsDouble(x);
+			case SIN: return x -> Math.sin(a.applyAsDouble(x));
+			case COS: return x -> Math.cos(a.applyAsDouble(x));
+			case EXP: return x -> Math.exp(a.applyAsDouble(x));
+			case SQRT: return x -> Math.sqrt(a.applyAsDouble(x));
+			case ABS: return x -> Math.abs(a.applyAsDouble(x));
+			default: return x -> op.apply(a.applyAsDouble(x));
+		}
+	}
+
+	public static List<String> tokenize(String function) {
+		//splits infix text into numbers, names and symbols; spaces are optional
+		List<String> tokens = new ArrayList<String>();
+		int i = 0;
+		while (i < function.length()) {
+			char c = function.charAt(i);
+			int start = i;
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			} else if (Character.isDigit(c) || c == '.') {
+				while (i < function.length() && (Character.isDigit(function.charAt(i)) || function.charAt(i) == '.')) {
+					i++;
+				}
+				//exponent, as in 1.5e-3, but not the constant e as in 2e
+				int exponent = i + 1;
+				if (exponent < function.length() && (function.charAt(exponent) == '+' || function.charAt(exponent) == '-')) {
+					exponent++;
+				}
+				if (i < function.length() && Character.toLowerCase(function.charAt(i)) == 'e'
+						&& exponent < function.length() && Character.isDigit(function.charAt(exponent))) {
+					i = exponent;
+					while (i < function.length() && Character.isDigit(function.charAt(i))) {
+						i++;
+					}
+				}
+				tokens.add(function.substring(start, i));
+			} else if (Character.isLetter(c)) {
+				while (i < function.length() && Character.isLetterOrDigit(function.charAt(i))) {
+					i++;
+				}
+				splitNames(function.substring(start, i).toLowerCase(), tokens);
+			} else if ("+-*/^()".indexOf(c) >= 0) {
+				tokens.add("" + c);
+				i++;
+			} else {
+				throw new IllegalArgumentException("Unexpected character: " + c);
+			}
+		}
+		return tokens;
+	}
+
+	private static void splitNames(String run, List<String> tokens) {
+		//a run of letters may hold several names, as in xsinx; takes the
+		//longest known name at each point, so sinh is not sin h
+		int i = 0;
+		while (i < run.length()) {
+			int start = i;
+			if (Character.isDigit(run.charAt(i))) {
+				while (i < run.length() && Character.isDigit(run.charAt(i))) {
+					i++;
+				}
+				tokens.add(run.substring(start, i));
+				continue;
+			}
+			String name = null;
+			for (int end = Math.min(run.length(), i + MAX_NAME); end > i && name == null; end--) {
+				String candidate = run.substring(i, end);
+				if (candidate.equals("x") || candidate.equals("pi") || candidate.equals("e")
+						|| Operator.of(candidate) != null && Operator.of(candidate).isPrefix()) {
+					name = candidate;
+				}
+			}
+			if (name == null) {
+				throw new IllegalArgumentException("Unknown name at \"" + run.substring(i) + "\" in \"" + run
+						+ "\"; use x, pi, e and the functions listed");
+			}
+			if (name.equals("pi")) {
+				tokens.add("" + Math.PI);
+			} else if (name.equals("e")) {
+				tokens.add("" + Math.E);
+			} else {
+				tokens.add(name);
+			}
+			i += name.length();
+		}
+	}
+
 	public static Queue<String> inToPost(String function) {
 		//uses shunting yard algorithm to convert infix to postfix
-		String[] infix = function.split(" ");
 		Queue<String> postfix = new ArrayDeque<String>();
 		Deque<String> operators = new ArrayDeque<String>();
 		Deque<Integer> blocked = new ArrayDeque<Integer>();
 		blocked.push(0);
-		for (String s: infix) {
+		boolean operand = false; //whether the last token ended an operand
+		for (String s: tokenize(function)) {
+			if (operand && (s.equals("x") || s.equals("(") || isNumber(s) || Operator.of(s) != null && Operator.of(s).isPrefix())) {
+				//implicit multiplication, as in 3x or 2(x + 1)
+				shunt("*", postfix, operators, blocked);
+			}
 			if (s.equals("x")) {
 				postfix.add(s);
-				continue;
-			}
-			try {
+			} else if (isNumber(s)) {
 				postfix.add("" + Double.parseDouble(s));
-			} catch (NumberFormatException e) {
+			} else if (!operand && s.equals("-")) {
+				shunt(Operator.NEGATE.getSymbol(), postfix, operators, blocked);
+			} else if (!operand && s.equals("+")) {
+				continue; //unary plus
+			} else {
+				if (s.equals(")") && blocked.size() == 1) {
+					throw new IllegalArgumentException("Unbalanced parentheses: " + function);
+				}
 				shunt(s, postfix, operators, blocked);
 			}
+			operand = s.equals("x") || s.equals(")") || isNumber(s);
+		}
+		if (blocked.size() != 1) {
+			throw new IllegalArgumentException("Unbalanced parentheses: " + function);
 		}
 		while (operators.size() != 0) {
 			postfix.add(operators.pop());
 		}
+		checkArity(postfix, function);
 		return postfix;
 	}
 
@@ -123,10 +362,10 @@ public class MonteCarloIntegrationInput {
 			}
 			blocked.pop();
 		} else {
-			while (operators.size() > 
-				blocked.peek() && 
-				priority.get(operators.peek()) <= 
-				priority.get(s)) {
+			Operator op = Operator.of(s);
+			while (!op.isPrefix() &&
+				operators.size() > blocked.peek() &&
+				op.yieldsTo(Operator.of(operators.peek()))) {
 				postfix.add(operators.pop());
 			}
 			operators.push(s);
@@ -134,60 +373,103 @@ public class MonteCarloIntegrationInput {
 	}
 
 	public static double simplify(double a, double b, String operator) {
-		if (operator.equals("^")) {
-			return Math.pow(a, b);
-		} else if (operator.equals("+")) {
-			return a + b;
-		} else if (operator.equals("-")) {
-			return a - b;
-		} else if (operator.equals("*")) {
-			return a * b;
-		} else if (operator.equals("/")) {
-			return a / b;
-		} else {
+		Operator op = Operator.of(operator);
+		if (op == null || op.isPrefix()) {
 			return 0; //Error
 		}
+		return op.apply(a, b);
+	}
+
+	private static boolean isNumber(String s) {
+		char c = s.charAt(0);
+		return Character.isDigit(c) || c == '.';
+	}
+
+	private static void checkArity(Queue<String> postfix, String function) {
+		//every operator needs its operands and exactly one value must remain
+		int depth = 0;
+		for (String s: postfix) {
+			Operator op = Operator.of(s);
+			if (op == null) {
+				depth++;
+			} else if (depth < op.getArity()) {
+				throw new IllegalArgumentException("Missing operand for " + s + ": " + function);
+			} else {
+				depth += 1 - op.getArity();
+			}
+		}
+		if (depth != 1) {
+			throw new IllegalArgumentException("Malformed expression: " + function);
+		}
 	}
 
 	public static void drawDatas(Graphics g) {
 		// calls functions that graph the 2 functions onto the drawing panel
-		boolean gap1 = true;
-		boolean gap2 = true;
-		for (double difference = (double) (xMax - xMin) / 500; (gap1 || gap2) && difference > Double.MIN_VALUE * 2; difference /= 2) {
-			if (gap1) {
-				g.setColor(Color.RED);
-				gap1 = plotData(f1, difference, g);
-			}
-			if (gap2) {
-				g.setColor(Color.BLUE);
-				gap2 = plotData(f2, difference, g);
-			}
+		g.setColor(Color.RED);
+		plotAdaptive(c1, g);
+		g.setColor(Color.BLUE);
+		plotAdaptive(c2, g);
+	}
+
+	public static int plotAdaptive(DoubleUnaryOperator function, Graphics g) {
+		/*
+		plots function at one x per pixel column, then bisects only the
+		columns where it jumps by more than JUMP_PIXELS vertically; every
+		interval hands its already evaluated ends down to its halves, so no
+		x is evaluated twice. Bisection stops at 1/64 pixel, and once the
+		plot has used REFINE_BUDGET bisections per column, the remaining
+		intervals are left with just their ends. Returns the number of
+		evaluations.
+		*/
+		double step = (double) (xMax - xMin) / X;
+		double x0 = xMin;
+		double y0 = function.applyAsDouble(x0);
+		plotVisible(g, x0, y0);
+		int evaluations = 1;
+		int budget = REFINE_BUDGET * X;
+		for (int i = 1; i <= X; i++) {
+			double x1 = xMin + i * step;
+			double y1 = function.applyAsDouble(x1);
+			plotVisible(g, x1, y1);
+			int refined = refine(function, x0, y0, x1, y1, 0, budget, g);
+			budget -= refined;
+			evaluations += 1 + refined;
+			x0 = x1;
+			y0 = y1;
 		}
+		return evaluations;
 	}
 
-	public static boolean plotData(Queue<String> function, double difference, Graphics g) {
-		//plots function
-		boolean gap = false;
-		double past = evaluate(f1, xMin);
-		double yDif = (double) (yMax - yMin) / 500;
-		if (yDif < Double.MIN_VALUE) {
-			yDif = Double.MIN_VALUE;
+	private static int refine(DoubleUnaryOperator function, double x0, double y0, double x1, double y1, int depth,
+			int budget, Graphics g) {
+		//fills in [x0, x1] until neighbouring points are at most JUMP_PIXELS apart,
+		//with at most budget evaluations; returns how many it used
+		double scale = Y / (double) (yMax - yMin);
+		boolean bothBelow = y0 < yMin && y1 < yMin;
+		boolean bothAbove = y0 > yMax && y1 > yMax;
+		if (budget <= 0 || depth >= MAX_DEPTH || bothBelow || bothAbove || Double.isNaN(y0) || Double.isNaN(y1)
+				|| Math.abs(y1 - y0) * scale <= JUMP_PIXELS) {
+			return 0;
 		}
-		for (double i = xMin + difference / 2; i < xMax; i += difference) {
-			// graphs a point
-			double next = evaluate(function, i);
-			if (Math.abs(next - past) > 2 * yDif && next > yMin && next < yMax) {
-				gap = true;
-			}
-			past = next;
-			if (next > yMin && next < yMax) {
-				plot(g, i, past);
-			}
+		double x = (x0 + x1) / 2;
+		double y = function.applyAsDouble(x);
+		plotVisible(g, x, y);
+		int left = refine(function, x0, y0, x, y, depth + 1, budget - 1, g);
+		return 1 + left + refine(function, x, y, x1, y1, depth + 1, budget - 1 - left, g);
+	}
+
+	private static void plotVisible(Graphics g, double x, double y) {
+		if (y > yMin && y < yMax) {
+			plot(g, x, y);
 		}
-		return gap;
 	}
 
-	public static boolean randomPointIn(int x0, int y0, int x1, int y1, Graphics g) {
+	public static void setGenerator(PointGenerator sampler) {
+		//chooses where randomPointIn draws its points from
+		generator = sampler;
+	}
+
+	public static boolean randomPointIn(double x0, double y0, double x1, double y1, SampleSink sink) {
 		/*
 		x0, y0, x1, and y1 are always the maxima in the simplest
 		form of integration
@@ -195,29 +477,232 @@ public class MonteCarloIntegrationInput {
 		if desired, they can be used to take a random point in a
 		smaller area of the graph
 		*/
-		double x = Math.random() * (x1 - x0) + x0;
-		double y = Math.random() * (y1 - y0) + y0;
-		double a = evaluate(f1, x);
-		double b = evaluate(f2, x);
-		if (a > b && a > y && y > b || a < b && a < y && y < b) {
-			g.setColor(Color.GREEN);
-			plot(g, x, y);
-			return true;
-		} else {
-			g.setColor(Color.GRAY);
-			plot(g, x, y);
-			return false;
-		}
+		generator.next(point);
+		double x = point[0] * (x1 - x0) + x0;
+		double y = point[1] * (y1 - y0) + y0;
+		boolean in = isBetween(c1.applyAsDouble(x), c2.applyAsDouble(x), y);
+		sink.add(pixelX(x), pixelY(y), in);
+		return in;
+	}
+
+	public static boolean isBetween(double a, double b, double y) {
+		return a > b && a > y && y > b || a < b && a < y && y < b;
 	}
 
 	public static double integrate(Graphics g) {
 		//for now, just between curve and x-axis
+		SampleSink sink = new DensitySink(g, X, Y, Color.GREEN, Color.GRAY, FRAME_MILLIS);
+		double estimate = integrateBatched(dots, sink);
+		sink.flush();
+		return estimate;
+	}
+
+	public static double integrateBatched(int samples, SampleSink sink) {
+		//integrate, but evaluating f1 and f2 over blocks of x values at once
+		double[] xs = new double[BATCH];
+		double[] ys = new double[BATCH];
+		double[] as = new double[BATCH];
+		double[] bs = new double[BATCH];
 		int in = 0;
-		for (int i = 0; i < dots; i++) {
-			if (randomPointIn(xMin, yMin, xMax, yMax, g)) {
-				in++;
+		for (int done = 0; done < samples; done += BATCH) {
+			int n = Math.min(BATCH, samples - done);
+			for (int i = 0; i < n; i++) {
+				generator.next(point);
+				xs[i] = point[0] * (xMax - xMin) + xMin;
+				ys[i] = point[1] * (yMax - yMin) + yMin;
+			}
+			b1.evaluate(xs, as, n);
+			b2.evaluate(xs, bs, n);
+			for (int i = 0; i < n; i++) {
+				boolean hit = isBetween(as[i], bs[i], ys[i]);
+				sink.add(pixelX(xs[i]), pixelY(ys[i]), hit);
+				if (hit) {
+					in++;
+				}
+			}
+		}
+		return (double) in / samples * (xMax - xMin) * (yMax - yMin);
+	}
+
+	public static Estimate integrateAdaptive(double relativeError, double confidence, SampleSink sink) {
+		//samples until the estimate is within relativeError at the given confidence
+		double area = (double) (xMax - xMin) * (yMax - yMin);
+		return RunningStats.converge(() -> randomPointIn(xMin, yMin, xMax, yMax, sink) ? area : 0,
+				relativeError, confidence, MAX_SAMPLES);
+	}
+
+	public static Estimate integrateReplicated(Supplier<PointGenerator> sequence, int replicates, int samples,
+			double confidence, long seed, SampleSink sink) {
+		//averages Cranley-Patterson rotated copies of sequence, with the error bar from their spread
+		SplittableRandom shifts = new SplittableRandom(seed);
+		double area = (double) (xMax - xMin) * (yMax - yMin);
+		PointGenerator previous = generator;
+		try {
+			return RunningStats.replicate(() -> {
+				generator = PointGenerator.rotated(sequence.get(), shifts.nextLong());
+				int in = 0;
+				for (int i = 0; i < samples; i++) {
+					if (randomPointIn(xMin, yMin, xMax, yMax, sink)) {
+						in++;
+					}
+				}
+				return (double) in / samples * area;
+			}, replicates, samples, confidence);
+		} finally {
+			generator = previous;
+		}
+	}
+
+	public static Estimate integrateStratified(int strips, int samples, boolean envelope, double confidence, SampleSink sink) {
+		/*
+		hit-or-miss with samples split evenly over x-strips; with envelope
+		each strip only samples between the lowest and highest value f1 and
+		f2 take on it, instead of over the whole y range
+		*/
+		long start = System.nanoTime();
+		double width = (double) (xMax - xMin) / strips;
+		int perStrip = Math.max(2, samples / strips);
+		double[] range = {yMin, yMax};
+		double value = 0;
+		double variance = 0;
+		for (int i = 0; i < strips; i++) {
+			double x0 = xMin + i * width;
+			double x1 = x0 + width;
+			if (envelope && !envelope(x0, x1, range)) {
+				continue; //neither curve enters the box on this strip
+			}
+			int in = 0;
+			for (int j = 0; j < perStrip; j++) {
+				if (randomPointIn(x0, range[0], x1, range[1], sink)) {
+					in++;
+				}
+			}
+			double area = width * (range[1] - range[0]);
+			double p = (double) in / perStrip;
+			value += p * area;
+			variance += area * area * p * (1 - p) / (perStrip - 1);
+		}
+		return new Estimate(value, Math.sqrt(variance), confidence, RunningStats.zScore(confidence),
+				(long) perStrip * strips, System.nanoTime() - start);
+	}
+
+	public static Estimate integrateMeanValue(int strips, int samples, double confidence) {
+		/*
+		averages the clipped gap between f1 and f2 at stratified x values
+		instead of testing points against it, which removes the y-sampling
+		noise of hit-or-miss entirely
+		*/
+		long start = System.nanoTime();
+		double width = (double) (xMax - xMin) / strips;
+		int perStrip = Math.max(2, samples / strips);
+		double value = 0;
+		double variance = 0;
+		for (int i = 0; i < strips; i++) {
+			double x0 = xMin + i * width;
+			RunningStats stats = new RunningStats();
+			for (int j = 0; j < perStrip; j++) {
+				generator.next(point);
+				stats.add(gap(x0 + point[0] * width));
+			}
+			value += width * stats.getMean();
+			variance += width * width * stats.getVariance() / perStrip;
+		}
+		return new Estimate(value, Math.sqrt(variance), confidence, RunningStats.zScore(confidence),
+				(long) perStrip * strips, System.nanoTime() - start);
+	}
+
+	public static double gap(double x) {
+		//length of the part of [f1(x), f2(x)] inside [yMin, yMax]
+		double a = c1.applyAsDouble(x);
+		double b = c2.applyAsDouble(x);
+		double high = Math.min(Math.max(a, b), yMax);
+		double low = Math.max(Math.min(a, b), yMin);
+		return high > low ? high - low : 0;
+	}
+
+	private static boolean envelope(double x0, double x1, double[] range) {
+		/*
+		probes f1 and f2 across [x0, x1] and stores the y range they cover in
+		range, padded by the largest step seen between probes so that
+		extrema between probes are still likely to be inside; returns false
+		when that range misses the box
+		*/
+		double low = Double.POSITIVE_INFINITY;
+		double high = Double.NEGATIVE_INFINITY;
+		double step = 0;
+		double previousA = 0;
+		double previousB = 0;
+		for (int k = 0; k <= ENVELOPE_PROBES; k++) {
+			double x = x0 + (x1 - x0) * k / ENVELOPE_PROBES;
+			double a = c1.applyAsDouble(x);
+			double b = c2.applyAsDouble(x);
+			if (Double.isNaN(a) || Double.isNaN(b) || Double.isInfinite(a) || Double.isInfinite(b)) {
+				range[0] = yMin;
+				range[1] = yMax;
+				return true;
+			}
+			if (k > 0) {
+				step = Math.max(step, Math.max(Math.abs(a - previousA), Math.abs(b - previousB)));
+			}
+			low = Math.min(low, Math.min(a, b));
+			high = Math.max(high, Math.max(a, b));
+			previousA = a;
+			previousB = b;
+		}
+		range[0] = Math.max(yMin, low - step);
+		range[1] = Math.min(yMax, high + step);
+		return range[1] > range[0];
+	}
+
+	public static double integrateParallel(double x0, double y0, double x1, double y1, long samples, long seed, int threads) {
+		/*
+		splits the samples across a fork-join pool without drawing them;
+		every task owns a SplittableRandom split off its parent in a fixed
+		order, so the estimate only depends on the seed and thread count
+		*/
+		long grain = Math.max(1 << 16, samples / (threads * 16L));
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			long in = pool.invoke(new HitCounter(new SplittableRandom(seed), samples, grain, x0, y0, x1, y1));
+			return (double) in / samples * (x1 - x0) * (y1 - y0);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static class HitCounter extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 0;
+		private final SplittableRandom random;
+		private final long samples;
+		private final long grain;
+		private final double x0, y0, x1, y1;
+
+		public HitCounter(SplittableRandom random, long samples, long grain, double x0, double y0, double x1, double y1) {
+			this.random = random;
+			this.samples = samples;
+			this.grain = grain;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.x1 = x1;
+			this.y1 = y1;
+		}
+
+		protected Long compute() {
+			if (samples <= grain) {
+				long in = 0;
+				for (long i = 0; i < samples; i++) {
+					double x = random.nextDouble() * (x1 - x0) + x0;
+					double y = random.nextDouble() * (y1 - y0) + y0;
+					if (isBetween(c1.applyAsDouble(x), c2.applyAsDouble(x), y)) {
+						in++;
+					}
+				}
+				return in;
 			}
+			HitCounter right = new HitCounter(random.split(), samples - samples / 2, grain, x0, y0, x1, y1);
+			HitCounter left = new HitCounter(random, samples / 2, grain, x0, y0, x1, y1);
+			right.fork();
+			return left.compute() + right.join();
 		}
-		return (double) in / dots * (xMax - xMin) * (yMax - yMin);
 	}
 }
\ No newline at end of file
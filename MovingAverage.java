@@ -0,0 +1,168 @@
+/*
+Moving Average
+Linear-time moving averages over a series. Box windows keep a running sum
+that adds the sample entering the window and drops the one leaving it, so
+each output costs the same whatever the window length; the sum is Kahan
+compensated so rounding does not build up over millions of steps. A window
+of w samples covers data[i - w / 2 .. i - w / 2 + w - 1], which is centered
+for odd w. How the ends, where the window does not fit inside the series,
+are filled is chosen with an EdgeMode: EXTRAPOLATE extends a least-squares
+line through the last window samples at each end, which a box average
+passes through unchanged.
+*/
+
+import java.util.*;
+
+public class MovingAverage {
+
+	public enum Kind {
+		CENTERED, //equal weights, centered on each sample
+		TRAILING, //equal weights over the sample and the window - 1 before it
+		EXPONENTIAL, //weights decay by 1 - 2 / (window + 1) per sample, like a window-long average
+		TRIANGULAR //weights rise linearly to the center and fall again, two box passes
+	}
+
+	//ends left at zero
+	public static double[] smooth(double[] data, int window, Kind kind) {
+		return smooth(data, window, kind, EdgeMode.NONE).getValues();
+	}
+
+	public static MaskedSeries smooth(double[] data, int window, Kind kind, EdgeMode edge) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must be positive: " + window);
+		}
+		int n = data.length;
+		boolean[] valid = new boolean[n];
+		if (edge == EdgeMode.MIRROR || edge == EdgeMode.NEAREST || edge == EdgeMode.EXTRAPOLATE) {
+			//pad a full window on each side, smooth that and keep the middle
+			double[] padded = new double[n + 2 * window];
+			int m = Math.min(window, n);
+			double[] left = line(data, 0, m);
+			double[] right = line(data, n - m, m);
+			for (int k = 0; k < padded.length; k++) {
+				int i = k - window;
+				if (i >= 0 && i < n || n == 0) {
+					padded[k] = n == 0 ? 0 : data[i];
+				} else if (edge != EdgeMode.EXTRAPOLATE) {
+					padded[k] = data[edge.index(i, n)];
+				} else if (i < 0) {
+					padded[k] = left[0] + left[1] * i;
+				} else {
+					padded[k] = right[0] + right[1] * (i - (n - m));
+				}
+			}
+			double[] smoothed = Arrays.copyOfRange(average(padded, window, kind), window, window + n);
+			Arrays.fill(valid, true);
+			return new MaskedSeries(smoothed, valid);
+		}
+		double[] smoothed = average(data, window, kind);
+		for (int i = validFrom(window, kind); i < validTo(n, window, kind); i++) {
+			valid[i] = true;
+		}
+		if (edge == EdgeMode.SHRINK) {
+			//narrower windows of the same shape; trailing ones simply start at the first sample
+			double sum = 0;
+			for (int i = 0; i < n; i++) {
+				sum += data[i];
+				if (valid[i]) {
+					continue;
+				}
+				int radius = Math.min(i, n - 1 - i);
+				double weighted = 0;
+				double weights = 0;
+				for (int j = -radius; j <= radius; j++) {
+					double weight = kind == Kind.TRIANGULAR ? radius + 1 - Math.abs(j) : 1;
+					weighted += weight * data[i + j];
+					weights += weight;
+				}
+				smoothed[i] = kind == Kind.TRAILING ? sum / (i + 1) : weighted / weights;
+				valid[i] = true;
+			}
+		}
+		return new MaskedSeries(smoothed, valid);
+	}
+
+	//first sample whose window fits inside the series
+	public static int validFrom(int window, Kind kind) {
+		return kind == Kind.EXPONENTIAL ? 0 : kind == Kind.TRAILING ? window - 1 : window / 2;
+	}
+
+	//one past the last sample whose window fits inside a series of length n
+	public static int validTo(int n, int window, Kind kind) {
+		return kind == Kind.TRAILING || kind == Kind.EXPONENTIAL ? n : n - (window - 1 - window / 2);
+	}
+
+	private static double[] average(double[] data, int window, Kind kind) {
+		double[] smoothed = new double[data.length];
+		average(data, data.length, window, kind, smoothed, kind == Kind.TRIANGULAR ? new double[data.length] : null);
+		return smoothed;
+	}
+
+	/*
+	allocation-free form for reused buffers: smooths data[0 .. n) into
+	smoothed[validFrom .. validTo) and leaves the rest of smoothed alone;
+	TRIANGULAR needs n entries of scratch
+	*/
+	public static void average(double[] data, int n, int window, Kind kind, double[] smoothed, double[] scratch) {
+		if (kind == Kind.CENTERED) {
+			box(data, 0, n, window, window / 2, smoothed);
+		} else if (kind == Kind.TRAILING) {
+			box(data, 0, n, window, window - 1, smoothed);
+		} else if (kind == Kind.EXPONENTIAL) {
+			double alpha = 2.0 / (window + 1);
+			double average = n > 0 ? data[0] : 0;
+			for (int i = 0; i < n; i++) {
+				average += alpha * (data[i] - average);
+				smoothed[i] = average;
+			}
+		} else {
+			//a box of p then a box of q is a triangle p + q - 1 wide, leads chosen to add up to window / 2
+			int p = (window + 1) / 2;
+			int q = window + 1 - p;
+			box(data, 0, n, p, p / 2, scratch);
+			box(scratch, p / 2, n - (p - 1 - p / 2), q, window / 2 - p / 2, smoothed);
+		}
+	}
+
+	private static double[] line(double[] data, int from, int m) {
+		//least-squares line through data[from .. from + m) as {value at from, slope}
+		double middle = (m - 1) / 2.0;
+		double mean = 0;
+		for (int k = 0; k < m; k++) {
+			mean += data[from + k];
+		}
+		mean /= Math.max(m, 1);
+		double slope = 0;
+		double spread = 0;
+		for (int k = 0; k < m; k++) {
+			slope += (k - middle) * (data[from + k] - mean);
+			spread += (k - middle) * (k - middle);
+		}
+		slope = spread > 0 ? slope / spread : 0;
+		return new double[] {mean - slope * middle, slope};
+	}
+
+	private static void box(double[] data, int from, int to, int length, int lead, double[] out) {
+		//out[i] = mean of data[i - lead .. i - lead + length) wherever that lies within [from, to)
+		double sum = 0;
+		double compensation = 0;
+		for (int k = from; k < Math.min(from + length - 1, to); k++) {
+			double y = data[k] - compensation;
+			double t = sum + y;
+			compensation = (t - sum) - y;
+			sum = t;
+		}
+		int trail = length - 1 - lead;
+		for (int i = from + lead; i + trail < to; i++) {
+			double y = data[i + trail] - compensation;
+			double t = sum + y;
+			compensation = (t - sum) - y;
+			sum = t;
+			out[i] = sum / length;
+			y = -data[i - lead] - compensation;
+			t = sum + y;
+			compensation = (t - sum) - y;
+			sum = t;
+		}
+	}
+}
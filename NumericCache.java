@@ -0,0 +1,192 @@
+/*
+Numeric Cache
+Keeps a binary copy of each text table next to it, named <file>.bin, so
+that a series read many times is parsed only once. The copy starts with a
+header (all little-endian):
+
+	 0  int    magic "NUMT"
+	 4  int    version
+	 8  int    bytes per value (8, IEEE double)
+	12  int    columns
+	16  long   rows
+	24  long   length of the source file
+	32  long   last-modified time of the source file
+	40  long   CRC-32C of the source file
+	48  int    offset of the data
+	52         each column name as a short byte count and UTF-8 bytes,
+	           padded with zeros to a multiple of 8
+
+and then the values column by column. The copy is used while the source's
+length matches and either its time stamp or its checksum does (a file that
+was only touched is checked once and its new time stamp recorded); anything
+else rebuilds it. map() hands out the columns as DoubleBuffers over the
+mapped file without copying, so a load costs page faults rather than parsing.
+*/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+public class NumericCache {
+
+	private static final int MAGIC = 'N' | 'U' << 8 | 'M' << 16 | 'T' << 24;
+	private static final int VERSION = 1;
+	private static final int BYTES = 8;
+	private static final int NAMES = 52; //where the column names start
+
+	public static double[] loadColumn(String file, int column) throws IOException {
+		DoubleBuffer[] columns = map(file);
+		if (column < 0 || column >= columns.length) {
+			throw new IllegalArgumentException(file + " has " + columns.length + " columns, no column " + column);
+		}
+		double[] values = new double[columns[column].remaining()];
+		columns[column].get(values);
+		return values;
+	}
+
+	public static double[][] load(String file) throws IOException {
+		DoubleBuffer[] columns = map(file);
+		double[][] table = new double[columns.length][];
+		for (int c = 0; c < columns.length; c++) {
+			table[c] = new double[columns[c].remaining()];
+			columns[c].get(table[c]);
+		}
+		return table;
+	}
+
+	//the columns of file, read-only views of its cache; falls back to parsing if the cache cannot be written
+	public static DoubleBuffer[] map(String file) throws IOException {
+		Path source = Paths.get(file);
+		Path cache = Paths.get(file + ".bin");
+		DoubleBuffer[] columns = mapIfFresh(source, cache);
+		if (columns != null) {
+			return columns;
+		}
+		long length = Files.size(source);
+		long modified = Files.getLastModifiedTime(source).toMillis();
+		long checksum = checksum(source);
+		double[][] table = NumericLoader.load(file);
+		try {
+			write(cache, table, length, modified, checksum);
+		} catch (IOException e) {
+			//read-only directory and the like: serve the parsed values directly
+			columns = new DoubleBuffer[table.length];
+			for (int c = 0; c < table.length; c++) {
+				columns[c] = DoubleBuffer.wrap(table[c]).asReadOnlyBuffer();
+			}
+			return columns;
+		}
+		columns = mapIfFresh(source, cache);
+		if (columns == null) {
+			throw new IOException("Cache for " + file + " went stale while it was written");
+		}
+		return columns;
+	}
+
+	//the cache's columns if it still matches source, or null if it is missing, stale or unreadable
+	private static DoubleBuffer[] mapIfFresh(Path source, Path cache) {
+		if (!Files.exists(cache)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+			if (channel.size() < NAMES) {
+				return null;
+			}
+			ByteBuffer header = ByteBuffer.allocate(NAMES).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(header, 0);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != BYTES) {
+				return null;
+			}
+			int columns = header.getInt(12);
+			long rows = header.getLong(16);
+			int offset = header.getInt(48);
+			if (header.getLong(24) != Files.size(source) || channel.size() != offset + columns * rows * BYTES) {
+				return null;
+			}
+			long modified = Files.getLastModifiedTime(source).toMillis();
+			if (header.getLong(32) != modified) {
+				if (header.getLong(40) != checksum(source)) {
+					return null;
+				}
+				restamp(cache, modified);
+			}
+			DoubleBuffer[] mapped = new DoubleBuffer[columns];
+			for (int c = 0; c < columns; c++) {
+				//a mapping stays valid after its channel is closed
+				mapped[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + c * rows * BYTES, rows * BYTES)
+						.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+			return mapped;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void restamp(Path cache, long modified) {
+		//same bytes, new time stamp: remember it so the next check is cheap again,
+		//if the cache can be written; if not, the checksum is just checked again
+		try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+			ByteBuffer stamp = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, modified);
+			channel.write(stamp, 32);
+		} catch (IOException e) {
+		}
+	}
+
+	private static void write(Path cache, double[][] table, long length, long modified, long checksum) throws IOException {
+		int columns = table.length;
+		long rows = columns == 0 ? 0 : table[0].length;
+		int offset = NAMES;
+		byte[][] names = new byte[columns][];
+		for (int c = 0; c < columns; c++) {
+			names[c] = ("column" + c).getBytes(StandardCharsets.UTF_8);
+			offset += 2 + names[c].length;
+		}
+		offset = (offset + BYTES - 1) / BYTES * BYTES;
+		ByteBuffer header = ByteBuffer.allocate(offset).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(BYTES).putInt(columns).putLong(rows);
+		header.putLong(length).putLong(modified).putLong(checksum).putInt(offset);
+		for (byte[] name: names) {
+			header.putShort((short) name.length).put(name);
+		}
+		header.clear();
+		//written beside the cache and moved over it, so a reader never sees half a file
+		Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				ByteBuffer block = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+				for (double[] column: table) {
+					for (int r = 0; r < column.length; ) {
+						int count = Math.min(block.capacity() / BYTES, column.length - r);
+						block.clear();
+						block.asDoubleBuffer().put(column, r, count);
+						block.limit(count * BYTES);
+						while (block.hasRemaining()) {
+							channel.write(block);
+						}
+						r += count;
+					}
+				}
+			}
+			Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static long checksum(Path source) throws IOException {
+		CRC32C crc = new CRC32C();
+		try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long at = 0; at < size; at += Integer.MAX_VALUE) {
+				crc.update(channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(Integer.MAX_VALUE, size - at)));
+			}
+		}
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,202 @@
+/*
+Numeric Loader
+Reads whitespace-separated tables of numbers, one row per line, by memory
+mapping the file and parsing the bytes directly. Rows may end in LF, CR or
+CR LF, columns may be split by spaces, tabs or commas, and the number of
+rows and columns is found from the file itself. Decimal numbers of up to
+18 digits whose value without the point stays below 2^53, with small
+exponents (everything in the data files here), are converted exactly
+without allocating: the digits are gathered into a long and scaled by one
+exactly representable power of ten. Anything else falls back to
+Double.parseDouble.
+*/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class NumericLoader {
+
+	private static final long WINDOW = 1 << 30; //bytes mapped at a time
+	private static final int CHUNK = 1 << 16; //bytes parsed at a time
+	private static final double[] POWERS = new double[23]; //10^0 .. 10^22 are exact doubles
+
+	static {
+		POWERS[0] = 1;
+		for (int i = 1; i < POWERS.length; i++) {
+			POWERS[i] = POWERS[i - 1] * 10;
+		}
+	}
+
+	//one column of the table, 0 being the first
+	public static double[] loadColumn(String file, int column) throws IOException {
+		double[][] columns = load(file);
+		if (column < 0 || column >= columns.length) {
+			throw new IllegalArgumentException(file + " has " + columns.length + " columns, no column " + column);
+		}
+		return columns[column];
+	}
+
+	//the whole table as columns[column][row]
+	public static double[][] load(String file) throws IOException {
+		double[] values = new double[1024];
+		int count = 0;
+		int columns = 0;
+		int inRow = 0;
+		int rows = 0;
+		//bytes are copied out of the mapping a chunk at a time, which beats reading them one by one
+		byte[] chunk = new byte[CHUNK];
+		int filled = 0;
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long read = 0;
+			long mapped = 0; //file offset of the start of window
+			MappedByteBuffer window = null;
+			while (true) {
+				while (filled < chunk.length && read < size) {
+					if (window == null || read == mapped + window.limit()) {
+						mapped = read;
+						window = channel.map(FileChannel.MapMode.READ_ONLY, mapped, Math.min(WINDOW, size - mapped));
+					}
+					int length = (int) Math.min(chunk.length - filled, mapped + window.limit() - read);
+					window.get((int) (read - mapped), chunk, filled, length);
+					filled += length;
+					read += length;
+				}
+				boolean last = read == size;
+				int i = 0;
+				while (i < filled) {
+					byte c = chunk[i];
+					if (c == '\n' || c == '\r') {
+						if (inRow > 0) {
+							columns = endRow(file, rows++, inRow, columns);
+							inRow = 0;
+						}
+						i++;
+					} else if (c == ' ' || c == '\t' || c == ',') {
+						i++;
+					} else {
+						int end = i + 1;
+						while (end < filled && !isSeparator(chunk[end])) {
+							end++;
+						}
+						if (end == filled && !last) {
+							break; //the number may go on in the next chunk
+						}
+						if (count == values.length) {
+							values = Arrays.copyOf(values, 2 * count);
+						}
+						values[count++] = parse(chunk, i, end);
+						inRow++;
+						i = end;
+					}
+				}
+				if (last) {
+					break;
+				}
+				if (i == 0) {
+					throw new IllegalArgumentException(file + ": token longer than " + CHUNK + " bytes");
+				}
+				//keep the unfinished number at the front of the chunk
+				System.arraycopy(chunk, i, chunk, 0, filled - i);
+				filled -= i;
+			}
+		}
+		if (inRow > 0) {
+			columns = endRow(file, rows++, inRow, columns);
+		}
+		//values are stored row by row; split them into columns
+		double[][] table = new double[columns][rows];
+		for (int r = 0, k = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++) {
+				table[c][r] = values[k++];
+			}
+		}
+		return table;
+	}
+
+	private static int endRow(String file, int row, int inRow, int columns) {
+		if (columns != 0 && inRow != columns) {
+			throw new IllegalArgumentException(file + ": row " + (row + 1) + " has " + inRow
+					+ " numbers, expected " + columns);
+		}
+		return inRow;
+	}
+
+	private static boolean isSeparator(byte c) {
+		return c == ' ' || c == '\t' || c == ',' || c == '\n' || c == '\r';
+	}
+
+	//the number in buffer[from .. to)
+	public static double parse(byte[] buffer, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (buffer[i] == '-' || buffer[i] == '+') {
+			negative = buffer[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int start = i;
+		for (; i < to; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			mantissa = mantissa * 10 + digit;
+		}
+		int digits = i - start;
+		int exponent = 0;
+		if (i < to && buffer[i] == '.') {
+			int fraction = ++i;
+			for (; i < to; i++) {
+				int digit = buffer[i] - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				mantissa = mantissa * 10 + digit;
+			}
+			exponent = fraction - i;
+			digits += i - fraction;
+		}
+		if (digits > 0 && i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+				negativeExponent = buffer[i] == '-';
+				i++;
+			}
+			int power = 0;
+			int powerStart = i;
+			for (; i < to; i++) {
+				int digit = buffer[i] - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				power = Math.min(power * 10 + digit, 100000);
+			}
+			if (i == powerStart) {
+				digits = 0;
+			}
+			exponent += negativeExponent ? -power : power;
+		}
+		//more than 18 digits could have overflowed the long
+		if (digits == 0 || digits > 18 || i != to || mantissa >= 1L << 53 || Math.abs(exponent) >= POWERS.length) {
+			return parseSlowly(buffer, from, to);
+		}
+		//both operands are exact, so the one rounding step gives the correctly rounded result
+		double value = exponent < 0 ? mantissa / POWERS[-exponent] : mantissa * POWERS[exponent];
+		return negative ? -value : value;
+	}
+
+	private static double parseSlowly(byte[] buffer, int from, int to) {
+		String text = new String(buffer, from, to - from, StandardCharsets.US_ASCII);
+		try {
+			return Double.parseDouble(text);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number: " + text);
+		}
+	}
+}
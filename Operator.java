@@ -0,0 +1,111 @@
+/*
+Operator
+Every operator and function MonteCarloIntegrationInput understands. Lower
+priority numbers bind tighter. Prefix operators (unary minus and the
+functions) take their argument from the right, so they never pop anything
+off the operator stack when they are pushed; a function written without
+parentheses applies to the next operand, so "sin x ^ 2" is (sin x) ^ 2.
+*/
+
+import java.util.*;
+
+public enum Operator {
+	POWER("^", 2, 1, true),
+	NEGATE("neg", 1, 2, true),
+	MULTIPLY("*", 2, 3, false),
+	DIVIDE("/", 2, 3, false),
+	ADD("+", 2, 4, false),
+	SUBTRACT("-", 2, 4, false),
+	SIN("sin", 1, 0, true),
+	COS("cos", 1, 0, true),
+	TAN("tan", 1, 0, true),
+	ASIN("asin", 1, 0, true),
+	ACOS("acos", 1, 0, true),
+	ATAN("atan", 1, 0, true),
+	SINH("sinh", 1, 0, true),
+	COSH("cosh", 1, 0, true),
+	TANH("tanh", 1, 0, true),
+	EXP("exp", 1, 0, true),
+	LOG("log", 1, 0, true), //natural logarithm
+	LN("ln", 1, 0, true),
+	LOG10("log10", 1, 0, true),
+	SQRT("sqrt", 1, 0, true),
+	CBRT("cbrt", 1, 0, true),
+	ABS("abs", 1, 0, true);
+
+	private static final Map<String, Operator> symbols = new HashMap<>();
+
+	static {
+		for (Operator op: values()) {
+			symbols.put(op.symbol, op);
+		}
+	}
+
+	private final String symbol;
+	private final int arity;
+	private final int priority;
+	private final boolean rightAssociative;
+
+	private Operator(String symbol, int arity, int priority, boolean rightAssociative) {
+		this.symbol = symbol;
+		this.arity = arity;
+		this.priority = priority;
+		this.rightAssociative = rightAssociative;
+	}
+
+	//the operator written as symbol in a postfix queue, or null
+	public static Operator of(String symbol) {
+		return symbols.get(symbol);
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getArity() {
+		return arity;
+	}
+
+	public boolean isPrefix() {
+		return arity == 1;
+	}
+
+	//whether this operator, arriving, pops top off the operator stack
+	public boolean yieldsTo(Operator top) {
+		return top.priority < priority || top.priority == priority && !rightAssociative;
+	}
+
+	public double apply(double a) {
+		switch (this) {
+			case NEGATE: return -a;
+			case SIN: return Math.sin(a);
+			case COS: return Math.cos(a);
+			case TAN: return Math.tan(a);
+			case ASIN: return Math.asin(a);
+			case ACOS: return Math.acos(a);
+			case ATAN: return Math.atan(a);
+			case SINH: return Math.sinh(a);
+			case COSH: return Math.cosh(a);
+			case TANH: return Math.tanh(a);
+			case EXP: return Math.exp(a);
+			case LOG: return Math.log(a);
+			case LN: return Math.log(a);
+			case LOG10: return Math.log10(a);
+			case SQRT: return Math.sqrt(a);
+			case CBRT: return Math.cbrt(a);
+			case ABS: return Math.abs(a);
+			default: throw new IllegalStateException(symbol + " takes two operands");
+		}
+	}
+
+	public double apply(double a, double b) {
+		switch (this) {
+			case POWER: return Math.pow(a, b);
+			case MULTIPLY: return a * b;
+			case DIVIDE: return a / b;
+			case ADD: return a + b;
+			case SUBTRACT: return a - b;
+			default: throw new IllegalStateException(symbol + " takes one operand");
+		}
+	}
+}
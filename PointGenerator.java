@@ -0,0 +1,115 @@
+/*
+Point Generator
+Source of sample points in the unit square for the Monte Carlo integrators.
+Pseudo-random points converge at O(N^-1/2); the low-discrepancy Halton and
+Sobol sequences converge close to O(N^-1) on smooth integrands. A
+Cranley-Patterson rotation shifts a sequence by a random offset (mod 1),
+which keeps its structure but makes independent replicates possible, so an
+error bar can still be computed from the spread between replicates.
+*/
+
+import java.util.SplittableRandom;
+
+public interface PointGenerator {
+
+	//stores the next point of the unit square in point[0] and point[1]
+	public void next(double[] point);
+
+	//the original sampler, Math.random() for both coordinates
+	public static PointGenerator random() {
+		return point -> {
+			point[0] = Math.random();
+			point[1] = Math.random();
+		};
+	}
+
+	//seeded pseudo-random points, reproducible
+	public static PointGenerator random(long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		return point -> {
+			point[0] = random.nextDouble();
+			point[1] = random.nextDouble();
+		};
+	}
+
+	public static PointGenerator halton() {
+		return new Halton();
+	}
+
+	public static PointGenerator sobol() {
+		return new Sobol();
+	}
+
+	//Cranley-Patterson rotation of base by a random shift drawn from seed
+	public static PointGenerator rotated(PointGenerator base, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		double shiftX = random.nextDouble();
+		double shiftY = random.nextDouble();
+		return point -> {
+			base.next(point);
+			point[0] += shiftX;
+			point[1] += shiftY;
+			if (point[0] >= 1) {
+				point[0] -= 1;
+			}
+			if (point[1] >= 1) {
+				point[1] -= 1;
+			}
+		};
+	}
+
+	//Halton sequence in bases 2 and 3, starting from index 1
+	public static class Halton implements PointGenerator {
+		private long index;
+
+		public void next(double[] point) {
+			index++;
+			point[0] = radicalInverse(index, 2);
+			point[1] = radicalInverse(index, 3);
+		}
+
+		private static double radicalInverse(long n, int base) {
+			double inverse = 0;
+			double digit = 1.0 / base;
+			while (n > 0) {
+				inverse += (n % base) * digit;
+				n /= base;
+				digit /= base;
+			}
+			return inverse;
+		}
+	}
+
+	/*
+	2-D Sobol sequence in Gray-code order (Antonov-Saleev): the first
+	coordinate is van der Corput in base 2, the second uses the primitive
+	polynomial x + 1. The all-zero first point is skipped.
+	*/
+	public static class Sobol implements PointGenerator {
+		private static final int BITS = 32;
+		private static final double SCALE = 1.0 / (1L << BITS);
+		private static final int[] DIRECTION_X = new int[BITS];
+		private static final int[] DIRECTION_Y = new int[BITS];
+
+		static {
+			for (int k = 0; k < BITS; k++) {
+				DIRECTION_X[k] = 1 << (BITS - 1 - k);
+				DIRECTION_Y[k] = k == 0 ? 1 << (BITS - 1) : DIRECTION_Y[k - 1] ^ (DIRECTION_Y[k - 1] >>> 1);
+			}
+		}
+
+		private int index;
+		private int x;
+		private int y;
+
+		public void next(double[] point) {
+			//flip the direction number of the lowest zero bit of the old index
+			int bit = Integer.numberOfTrailingZeros(~index);
+			index++;
+			x ^= DIRECTION_X[bit];
+			y ^= DIRECTION_Y[bit];
+			point[0] = (x & 0xffffffffL) * SCALE;
+			point[1] = (y & 0xffffffffL) * SCALE;
+		}
+	}
+}
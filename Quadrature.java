@@ -0,0 +1,102 @@
+/*
+Quadrature
+Deterministic area between two tabulated curves sampled on the same evenly
+spaced grid. Where the curves cross inside an interval the crossing point
+is found by linear interpolation and the two slivers on either side are
+added separately, so the kink in |a - b| never falls inside a panel. Each
+run of intervals between crossings is then integrated with the chosen rule.
+*/
+
+public class Quadrature {
+
+	public enum Rule {
+		TRAPEZOID, SIMPSON, ROMBERG
+	}
+
+	public static double areaBetween(double[] a, double[] b, double h, Rule rule) {
+		//area enclosed between a and b, where h is the spacing of the samples
+		int n = Math.min(a.length, b.length);
+		double area = 0;
+		int start = 0;
+		for (int i = 0; i < n - 1; i++) {
+			double d0 = a[i] - b[i];
+			double d1 = a[i + 1] - b[i + 1];
+			if (d0 > 0 && d1 < 0 || d0 < 0 && d1 > 0) {
+				//close off the run that ends at i and add the two slivers
+				area += run(a, b, start, i, h, rule);
+				double t = d0 / (d0 - d1);
+				area += h * (t * Math.abs(d0) + (1 - t) * Math.abs(d1)) / 2;
+				start = i + 1;
+			}
+		}
+		return area + run(a, b, start, n - 1, h, rule);
+	}
+
+	private static double run(double[] a, double[] b, int start, int end, double h, Rule rule) {
+		//integrates |a - b| from start to end, which do not cross in between
+		int intervals = end - start;
+		if (intervals <= 0) {
+			return 0;
+		} else if (rule == Rule.SIMPSON && intervals >= 2) {
+			return simpson(a, b, start, end, h);
+		} else if (rule == Rule.ROMBERG) {
+			return romberg(a, b, start, end, h);
+		}
+		return trapezoid(a, b, start, end, 1, h);
+	}
+
+	private static double trapezoid(double[] a, double[] b, int start, int end, int stride, double h) {
+		double sum = (Math.abs(a[start] - b[start]) + Math.abs(a[end] - b[end])) / 2;
+		for (int i = start + stride; i < end; i += stride) {
+			sum += Math.abs(a[i] - b[i]);
+		}
+		return sum * h * stride;
+	}
+
+	private static double simpson(double[] a, double[] b, int start, int end, double h) {
+		//composite 1/3 rule; an odd interval count ends with one 3/8 panel
+		int intervals = end - start;
+		int last = intervals % 2 == 0 ? end : end - 3;
+		double sum = 0;
+		for (int i = start; i < last; i += 2) {
+			sum += Math.abs(a[i] - b[i]) + 4 * Math.abs(a[i + 1] - b[i + 1]) + Math.abs(a[i + 2] - b[i + 2]);
+		}
+		sum *= h / 3;
+		if (last != end) {
+			if (intervals == 1) {
+				return trapezoid(a, b, start, end, 1, h);
+			}
+			sum += 3 * h / 8 * (Math.abs(a[last] - b[last]) + 3 * Math.abs(a[last + 1] - b[last + 1])
+				+ 3 * Math.abs(a[last + 2] - b[last + 2]) + Math.abs(a[end] - b[end]));
+		}
+		return sum;
+	}
+
+	private static double romberg(double[] a, double[] b, int start, int end, double h) {
+		/*
+		Richardson extrapolation of trapezoid sums at strides 1, 2, 4, ...;
+		a stride is only usable while it divides the run length, so runs of
+		odd length fall back to Simpson
+		*/
+		int intervals = end - start;
+		int levels = Math.min(Integer.numberOfTrailingZeros(intervals), 6);
+		if (levels == 0) {
+			return intervals >= 2 ? simpson(a, b, start, end, h) : trapezoid(a, b, start, end, 1, h);
+		}
+		//row j of the Romberg table starts from the trapezoid sum at stride 2^(levels - j)
+		double[] previous = new double[levels + 1];
+		double[] current = new double[levels + 1];
+		for (int j = 0; j <= levels; j++) {
+			current[0] = trapezoid(a, b, start, end, 1 << (levels - j), h);
+			double factor = 4;
+			for (int k = 1; k <= j; k++) {
+				current[k] = current[k - 1] + (current[k - 1] - previous[k - 1]) / (factor - 1);
+				factor *= 4;
+			}
+			double[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[levels];
+	}
+}
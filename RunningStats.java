@@ -0,0 +1,108 @@
+/*
+Running Stats
+Welford-style running mean and variance of a stream of samples, plus the
+convergence loop the Monte Carlo integrators use to stop once an estimate
+reaches a requested relative error at a given confidence level.
+*/
+
+import java.util.function.DoubleSupplier;
+
+public class RunningStats {
+
+	private static final int BATCH = 1000; //samples between convergence checks
+
+	private long count;
+	private double mean;
+	private double m2; //sum of squared differences from the mean
+
+	public void add(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getVariance() {
+		return count > 1 ? m2 / (count - 1) : 0;
+	}
+
+	public double getStandardError() {
+		return count > 1 ? Math.sqrt(getVariance() / count) : Double.POSITIVE_INFINITY;
+	}
+
+	public static Estimate converge(DoubleSupplier sample, double relativeError, double confidence, long maxSamples) {
+		/*
+		draws samples in batches until the confidence interval's half width
+		is within relativeError of the mean, or maxSamples runs out
+		*/
+		double z = zScore(confidence);
+		RunningStats stats = new RunningStats();
+		long start = System.nanoTime();
+		while (stats.count < maxSamples) {
+			long batch = Math.min(BATCH, maxSamples - stats.count);
+			for (long i = 0; i < batch; i++) {
+				stats.add(sample.getAsDouble());
+			}
+			double halfWidth = z * stats.getStandardError();
+			if (stats.m2 > 0 && halfWidth <= relativeError * Math.abs(stats.mean)) {
+				break;
+			}
+		}
+		return new Estimate(stats.mean, stats.getStandardError(), confidence, z, stats.count, System.nanoTime() - start);
+	}
+
+	public static Estimate replicate(DoubleSupplier replicate, int replicates, long samplesPerReplicate, double confidence) {
+		/*
+		runs independent randomized replicates of a whole estimate (e.g.
+		rotated quasi-random runs) and reports their mean, with the error
+		bar taken from the spread between replicates
+		*/
+		RunningStats stats = new RunningStats();
+		long start = System.nanoTime();
+		for (int i = 0; i < replicates; i++) {
+			stats.add(replicate.getAsDouble());
+		}
+		double z = zScore(confidence);
+		return new Estimate(stats.mean, stats.getStandardError(), confidence, z,
+				replicates * samplesPerReplicate, System.nanoTime() - start);
+	}
+
+	public static double zScore(double confidence) {
+		//two-sided normal quantile, e.g. 0.95 -> 1.96
+		return inverseNormal(0.5 + confidence / 2);
+	}
+
+	public static double inverseNormal(double p) {
+		//Acklam's rational approximation, relative error below 1.2e-9
+		if (p <= 0 || p >= 1) {
+			throw new IllegalArgumentException("Probability out of range: " + p);
+		}
+		double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+			1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+		double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+			6.680131188771972e+01, -1.328068155288572e+01};
+		double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+			-2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+		double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+			3.754408661907416e+00};
+		double low = 0.02425;
+		if (p < low || p > 1 - low) {
+			double q = Math.sqrt(-2 * Math.log(p < low ? p : 1 - p));
+			double x = (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q + c[4]) * q + c[5])
+				/ ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+			return p < low ? x : -x;
+		}
+		double q = p - 0.5;
+		double r = q * q;
+		return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r + a[5]) * q
+			/ (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) * r + b[4]) * r + 1);
+	}
+}
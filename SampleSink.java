@@ -0,0 +1,21 @@
+/*
+Sample Sink
+Receives every point thrown by a Monte Carlo integrator, in pixel
+coordinates, so that sampling does not have to draw as it goes.
+*/
+
+public interface SampleSink {
+
+	//discards every sample, for runs that only want the estimate
+	public static final SampleSink NONE = new SampleSink() {
+		public void add(int x, int y, boolean in) {}
+
+		public void flush() {}
+	};
+
+	//records one sample at pixel (x, y); in is true for a hit
+	public void add(int x, int y, boolean in);
+
+	//pushes whatever has been recorded so far to the screen
+	public void flush();
+}
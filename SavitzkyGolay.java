@@ -0,0 +1,359 @@
+/*
+Savitzky-Golay Coefficients
+Computes normalized Savitzky-Golay convolution weights for any odd window
+length, polynomial order and derivative order by solving the least-squares
+polynomial fit directly, instead of reading them off a printed table.
+
+A window of 2m + 1 points at offsets j = -m..m is fit with a polynomial of
+the given order in t = j / m (scaling keeps the normal equations well
+conditioned for long windows). Differentiating that polynomial at the
+evaluation point gives weights c such that sum(c[j] * data[i + j - m]) is
+the smoothed value or derivative at i, per sample spacing. Results are
+cached, so each (window, order, derivative, position) is solved only once.
+
+apply() runs a filter over a series, switching from the direct O(N * K) sum
+to overlap-save FFT convolution, O(N log K), for long windows on long
+series (see SavitzkyGolayBenchmark for where the crossover lies). filter()
+wraps it with an EdgeMode for the ends and returns a MaskedSeries.
+*/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SavitzkyGolay {
+
+	private static final Map<Long, double[]> cache = new ConcurrentHashMap<>();
+	public static final int FFT_MIN_WINDOW = 48; //shortest window worth an FFT, measured
+	public static final long FFT_MIN_WORK = 1 << 21; //smallest N * K worth an FFT, measured
+
+	//weights for the center of the window
+	public static double[] coefficients(int window, int order, int derivative) {
+		return coefficients(window, order, derivative, window / 2);
+	}
+
+	/*
+	weights for the point at index position of the window (0 is the first
+	sample), which lets the ends of a series use lopsided windows; the
+	returned array is shared, so do not modify it
+	*/
+	public static double[] coefficients(int window, int order, int derivative, int position) {
+		if (window < 1 || window % 2 == 0) {
+			throw new IllegalArgumentException("Window must be a positive odd number: " + window);
+		}
+		if (order < 0 || order >= window || derivative < 0 || derivative > order) {
+			throw new IllegalArgumentException("Need 0 <= derivative <= order < window, got derivative "
+					+ derivative + ", order " + order + ", window " + window);
+		}
+		if (window >= 1 << 20 || order >= 1 << 12) {
+			throw new IllegalArgumentException("Window or order too large: " + window + ", " + order);
+		}
+		if (position < 0 || position >= window) {
+			throw new IllegalArgumentException("Position outside window: " + position);
+		}
+		//window and position fit in 20 bits each, order and derivative in 12
+		long key = (long) window << 44 | (long) position << 24 | (long) order << 12 | derivative;
+		double[] weights = cache.get(key);
+		if (weights == null) {
+			weights = solve(window, order, derivative, position);
+			cache.put(key, weights);
+		}
+		return weights;
+	}
+
+	private static double[] solve(int window, int order, int derivative, int position) {
+		int half = window / 2;
+		double scale = Math.max(half, 1);
+		int terms = order + 1;
+		//powers[j][k] = t_j^k
+		double[][] powers = new double[window][terms];
+		for (int j = 0; j < window; j++) {
+			double t = (j - half) / scale;
+			double power = 1;
+			for (int k = 0; k < terms; k++) {
+				powers[j][k] = power;
+				power *= t;
+			}
+		}
+		//normal equations: (A^T A) a = A^T y
+		double[][] normal = new double[terms][terms];
+		for (int r = 0; r < terms; r++) {
+			for (int c = 0; c < terms; c++) {
+				for (int j = 0; j < window; j++) {
+					normal[r][c] += powers[j][r] * powers[j][c];
+				}
+			}
+		}
+		//derivative of t^k at the evaluation point, as a row vector d
+		double t0 = (position - half) / scale;
+		double[] d = new double[terms];
+		for (int k = derivative; k < terms; k++) {
+			double factor = 1;
+			for (int f = 0; f < derivative; f++) {
+				factor *= k - f;
+			}
+			d[k] = factor * Math.pow(t0, k - derivative);
+		}
+		//weights = d (A^T A)^-1 A^T; since A^T A is symmetric, solve (A^T A) z = d
+		double[] z = gauss(normal, d);
+		double[] weights = new double[window];
+		double perSample = Math.pow(scale, derivative); //d/dj = (1 / m) d/dt
+		for (int j = 0; j < window; j++) {
+			double sum = 0;
+			for (int k = 0; k < terms; k++) {
+				sum += z[k] * powers[j][k];
+			}
+			weights[j] = sum / perSample;
+		}
+		return weights;
+	}
+
+	private static double[] gauss(double[][] matrix, double[] rhs) {
+		//Gaussian elimination with partial pivoting on copies of its inputs
+		int n = rhs.length;
+		double[][] a = new double[n][];
+		for (int i = 0; i < n; i++) {
+			a[i] = Arrays.copyOf(matrix[i], n + 1);
+			a[i][n] = rhs[i];
+		}
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < n; row++) {
+				if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+					pivot = row;
+				}
+			}
+			double[] swap = a[col];
+			a[col] = a[pivot];
+			a[pivot] = swap;
+			for (int row = col + 1; row < n; row++) {
+				double factor = a[row][col] / a[col][col];
+				for (int k = col; k <= n; k++) {
+					a[row][k] -= factor * a[col][k];
+				}
+			}
+		}
+		double[] x = new double[n];
+		for (int row = n - 1; row >= 0; row--) {
+			double sum = a[row][n];
+			for (int k = row + 1; k < n; k++) {
+				sum -= a[row][k] * x[k];
+			}
+			x[row] = sum / a[row][row];
+		}
+		return x;
+	}
+
+	/*
+	out[i] = sum(weights[j] * data[i - half + j]) for every i whose window
+	fits inside data, choosing direct or FFT convolution; entries within
+	half a window of either end are left untouched
+	*/
+	public static void apply(double[] data, double[] weights, double[] out) {
+		if (weights.length >= FFT_MIN_WINDOW && (long) data.length * weights.length >= FFT_MIN_WORK) {
+			applyFft(data, weights, out);
+		} else {
+			applyDirect(data, weights, out);
+		}
+	}
+
+	/*
+	the filtered series with its ends handled by edge; only NONE leaves
+	samples invalid, unless the series is too short to fit the derivative
+	at all (see EdgeMode)
+	*/
+	public static MaskedSeries filter(double[] data, int window, int order, int derivative, EdgeMode edge) {
+		double[] weights = coefficients(window, order, derivative);
+		int n = data.length;
+		int half = window / 2;
+		double[] out = new double[n];
+		boolean[] valid = new boolean[n];
+		apply(data, weights, out);
+		for (int i = half; i < n - half; i++) {
+			valid[i] = true;
+		}
+		for (int i = 0; i < n; i++) {
+			if (i == half && i < n - half) {
+				i = n - half; //skip the interior
+			}
+			if (edge == EdgeMode.MIRROR || edge == EdgeMode.NEAREST) {
+				double weightedSum = 0;
+				for (int j = 0; j < window; j++) {
+					weightedSum += data[edge.index(i - half + j, n)] * weights[j];
+				}
+				out[i] = weightedSum;
+				valid[i] = true;
+			} else if (edge == EdgeMode.SHRINK) {
+				int radius = Math.min(i, n - 1 - i);
+				int narrow = 2 * radius + 1;
+				int lower = Math.min(order, narrow - 1);
+				if (derivative <= lower) {
+					out[i] = dot(data, i - radius, coefficients(narrow, lower, derivative));
+					valid[i] = true;
+				} else {
+					//too close to the end to fit the derivative symmetrically: the
+					//narrowest window that can, against the near end, off center
+					int fit = derivative + 1 + derivative % 2;
+					int start = i < n / 2 ? 0 : n - fit;
+					if (fit <= n) {
+						out[i] = dot(data, start, coefficients(fit, Math.min(order, fit - 1), derivative, i - start));
+						valid[i] = true;
+					}
+				}
+			} else if (edge == EdgeMode.EXTRAPOLATE) {
+				//one window against the near end, or the longest odd run if the series is shorter
+				int fit = n >= window ? window : n - 1 + n % 2;
+				int lower = Math.min(order, fit - 1);
+				int start = i < n / 2 ? 0 : n - fit;
+				if (derivative <= lower) {
+					out[i] = dot(data, start, coefficients(fit, lower, derivative, i - start));
+					valid[i] = true;
+				}
+			}
+		}
+		return new MaskedSeries(out, valid);
+	}
+
+	private static double dot(double[] data, int start, double[] weights) {
+		double weightedSum = 0;
+		for (int j = 0; j < weights.length; j++) {
+			weightedSum += data[start + j] * weights[j];
+		}
+		return weightedSum;
+	}
+
+	public static void applyDirect(double[] data, double[] weights, double[] out) {
+		int half = weights.length / 2;
+		for (int i = half; i < data.length - half; i++) {
+			double weightedSum = 0;
+			for (int j = 0; j < weights.length; j++) {
+				weightedSum += data[i - half + j] * weights[j];
+			}
+			out[i] = weightedSum;
+		}
+	}
+
+	public static void applyFft(double[] data, double[] weights, double[] out) {
+		/*
+		overlap-save: each block of size FFT samples yields FFT - K + 1 valid
+		outputs. The series is real, so two consecutive blocks ride in the
+		real and imaginary halves of one complex transform. A straight-line
+		fit is taken out first and its exact filtered value added back, so
+		the rounding error scales with the signal's variation rather than
+		its offset and trend (a rising 400 ppm baseline would otherwise swamp
+		a derivative).
+		*/
+		int taps = weights.length;
+		int half = taps / 2;
+		int n = data.length;
+		if (n < taps) {
+			return;
+		}
+		int size = Integer.highestOneBit(Math.max(4 * taps, 64) - 1) << 1;
+		int step = size - taps + 1;
+		//least-squares line through the series, about its middle index
+		double middle = (n - 1) / 2.0;
+		double mean = 0;
+		double slope = 0;
+		double spread = 0;
+		for (int i = 0; i < n; i++) {
+			mean += data[i];
+		}
+		mean /= n;
+		for (int i = 0; i < n; i++) {
+			slope += (i - middle) * (data[i] - mean);
+			spread += (i - middle) * (i - middle);
+		}
+		slope = spread > 0 ? slope / spread : 0;
+		//the filter's response to that line, sum(w) * line(i) + slope * sum(w * offset)
+		double gain = 0;
+		double lag = 0;
+		for (int j = 0; j < taps; j++) {
+			gain += weights[j];
+			lag += weights[j] * (j - half);
+		}
+
+		double[] cos = new double[size / 2];
+		double[] sin = new double[size / 2];
+		for (int k = 0; k < size / 2; k++) {
+			cos[k] = Math.cos(2 * Math.PI * k / size);
+			sin[k] = -Math.sin(2 * Math.PI * k / size);
+		}
+		//transform of the reversed weights, so convolution computes the correlation above
+		double[] filterRe = new double[size];
+		double[] filterIm = new double[size];
+		for (int k = 0; k < taps; k++) {
+			filterRe[k] = weights[taps - 1 - k];
+		}
+		fft(filterRe, filterIm, cos, sin);
+
+		double[] re = new double[size];
+		double[] im = new double[size];
+		//full-overlap outputs are c[taps - 1 .. n - 1], and y[i] = c[i + half]
+		for (int start = 0; start + taps - 1 < n; start += 2 * step) {
+			for (int k = 0; k < size; k++) {
+				int first = start + k;
+				int second = start + step + k;
+				re[k] = first < n ? data[first] - mean - slope * (first - middle) : 0;
+				im[k] = second < n ? data[second] - mean - slope * (second - middle) : 0;
+			}
+			fft(re, im, cos, sin);
+			for (int k = 0; k < size; k++) {
+				double r = re[k] * filterRe[k] - im[k] * filterIm[k];
+				double i = re[k] * filterIm[k] + im[k] * filterRe[k];
+				//conjugate so the forward transform below inverts
+				re[k] = r;
+				im[k] = -i;
+			}
+			fft(re, im, cos, sin);
+			for (int k = taps - 1; k < size; k++) {
+				int first = start + k;
+				int second = start + step + k;
+				if (first < n) {
+					int i = first - half;
+					out[i] = re[k] / size + gain * (mean + slope * (i - middle)) + slope * lag;
+				}
+				if (second < n) {
+					int i = second - half;
+					out[i] = -im[k] / size + gain * (mean + slope * (i - middle)) + slope * lag;
+				}
+			}
+		}
+	}
+
+	private static void fft(double[] re, double[] im, double[] cos, double[] sin) {
+		//in-place iterative radix-2 transform; the length must be a power of two
+		int n = re.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j |= bit;
+			if (i < j) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		for (int length = 2; length <= n; length <<= 1) {
+			int stride = n / length;
+			for (int i = 0; i < n; i += length) {
+				for (int k = 0; k < length / 2; k++) {
+					double wr = cos[k * stride];
+					double wi = sin[k * stride];
+					int a = i + k;
+					int b = a + length / 2;
+					double xr = re[b] * wr - im[b] * wi;
+					double xi = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - xr;
+					im[b] = im[a] - xi;
+					re[a] += xr;
+					im[a] += xi;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+Savitzky-Golay Batch
+Runs the Keeling pipeline, a moving average followed by a Savitzky-Golay
+filter, over many series at once. Channels are split across a fork-join
+pool; each worker thread keeps its own scratch buffers and grows them only
+when it meets a longer channel, so repeated batches allocate nothing per
+channel. Results go into caller-owned arrays. The ends of every channel,
+where either window does not fit, are marked invalid (EdgeMode.NONE).
+*/
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SavitzkyGolayBatch {
+
+	private final int average;
+	private final MovingAverage.Kind kind;
+	private final double[] weights;
+	private final ThreadLocal<double[][]> scratch = ThreadLocal.withInitial(() -> new double[2][0]);
+
+	//average 1 skips the moving average; it must be at least 1
+	public SavitzkyGolayBatch(int average, MovingAverage.Kind kind, int window, int order, int derivative) {
+		if (average < 1) {
+			throw new IllegalArgumentException("Window must be positive: " + average);
+		}
+		this.average = average;
+		this.kind = kind;
+		this.weights = SavitzkyGolay.coefficients(window, order, derivative);
+	}
+
+	//runs on the common pool
+	public double filter(double[][] channels, double[][] out, boolean[][] valid) {
+		return filter(channels, out, valid, ForkJoinPool.commonPool());
+	}
+
+	/*
+	filters channels[c] into out[c] and valid[c], which must be at least as
+	long; returns the throughput in input samples per second
+	*/
+	public double filter(double[][] channels, double[][] out, boolean[][] valid, ForkJoinPool pool) {
+		long samples = 0;
+		for (double[] channel: channels) {
+			samples += channel.length;
+		}
+		int grain = Math.max(1, channels.length / (pool.getParallelism() * 8));
+		long start = System.nanoTime();
+		pool.invoke(new Channels(channels, out, valid, 0, channels.length, grain));
+		long nanos = Math.max(1, System.nanoTime() - start);
+		return samples / (nanos / 1e9);
+	}
+
+	public void filter(double[] data, double[] out, boolean[] valid) {
+		//one channel on the calling thread
+		int n = data.length;
+		double[][] buffers = scratch.get();
+		if (buffers[0].length < n) {
+			buffers[0] = new double[n];
+			buffers[1] = new double[n];
+		}
+		double[] smoothed = data;
+		int from = 0;
+		int to = n;
+		if (average > 1) {
+			smoothed = buffers[0];
+			MovingAverage.average(data, n, average, kind, smoothed, buffers[1]);
+			from = MovingAverage.validFrom(average, kind);
+			to = MovingAverage.validTo(n, average, kind);
+		}
+		int half = weights.length / 2;
+		int first = Math.min(from + half, n);
+		int last = Math.max(first, to - half);
+		Arrays.fill(out, 0, first, 0);
+		Arrays.fill(valid, 0, first, false);
+		for (int i = first; i < last; i++) {
+			double weightedSum = 0;
+			for (int j = 0; j < weights.length; j++) {
+				weightedSum += smoothed[i - half + j] * weights[j];
+			}
+			out[i] = weightedSum;
+			valid[i] = true;
+		}
+		Arrays.fill(out, last, n, 0);
+		Arrays.fill(valid, last, n, false);
+	}
+
+	private class Channels extends RecursiveAction {
+		private static final long serialVersionUID = 0;
+		private final double[][] channels;
+		private final double[][] out;
+		private final boolean[][] valid;
+		private final int from, to, grain;
+
+		public Channels(double[][] channels, double[][] out, boolean[][] valid, int from, int to, int grain) {
+			this.channels = channels;
+			this.out = out;
+			this.valid = valid;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (to - from <= grain) {
+				for (int c = from; c < to; c++) {
+					filter(channels[c], out[c], valid[c]);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Channels(channels, out, valid, from, middle, grain),
+						new Channels(channels, out, valid, middle, to, grain));
+			}
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+Savitzky-Golay Benchmarks
+Times direct against FFT convolution over a grid of window lengths and
+series lengths, checks that they agree, and reports the crossover that
+SavitzkyGolay.FFT_MIN_WINDOW and FFT_MIN_WORK are set from. First checks
+that every EdgeMode fills in the ends, derivatives included. Run with no
+arguments.
+*/
+
+import java.io.*;
+import java.math.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SavitzkyGolayBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		checkEdges(new int[] {3, 4, 5, 40}, 11);
+		benchmarkConvolution(new int[] {9, 17, 33, 49, 65, 101, 201, 401}, new int[] {10000, 100000, 1000000});
+		benchmarkStreaming(new int[] {9, 31, 101}, 10000000);
+		benchmarkMovingAverage(new int[] {13, 121, 697, 10001}, 5000000);
+		benchmarkBatch(4000, 697);
+		benchmarkLoader(500000);
+	}
+
+	public static void benchmarkConvolution(int[] windows, int[] lengths) {
+		Random random = new Random(1);
+		System.out.printf("%8s %6s %12s %12s %8s %12s %12s%n", "N", "K", "direct ns", "fft ns", "speedup",
+				"direct err", "fft err");
+		for (int n: lengths) {
+			//a Keeling-like series: large offset, trend, season and noise
+			double[] data = new double[n];
+			for (int i = 0; i < n; i++) {
+				data[i] = 315 + 0.1 * i / 12 + 3 * Math.sin(2 * Math.PI * i / 12) + random.nextGaussian() * 0.3;
+			}
+			for (int window: windows) {
+				double[] weights = SavitzkyGolay.coefficients(window, 3, 1);
+				double[] direct = new double[n];
+				double[] fft = new double[n];
+				long directNanos = Long.MAX_VALUE;
+				long fftNanos = Long.MAX_VALUE;
+				for (int round = 0; round < ROUNDS; round++) {
+					long start = System.nanoTime();
+					SavitzkyGolay.applyDirect(data, weights, direct);
+					long middle = System.nanoTime();
+					SavitzkyGolay.applyFft(data, weights, fft);
+					long end = System.nanoTime();
+					directNanos = Math.min(directNanos, middle - start);
+					fftNanos = Math.min(fftNanos, end - middle);
+				}
+				//errors against an exact sum at about a thousand sample points
+				double largest = 0;
+				double directError = 0;
+				double fftError = 0;
+				int every = Math.max(1, n / 1000);
+				for (int i = window / 2; i < n - window / 2; i += every) {
+					double exact = exactSum(data, weights, i);
+					largest = Math.max(largest, Math.abs(exact));
+					directError = Math.max(directError, Math.abs(direct[i] - exact));
+					fftError = Math.max(fftError, Math.abs(fft[i] - exact));
+				}
+				System.out.printf("%8d %6d %12d %12d %8.2f %12.1e %12.1e%n", n, window, directNanos, fftNanos,
+						(double) directNanos / fftNanos, directError / largest, fftError / largest);
+			}
+		}
+	}
+
+	public static void checkEdges(int[] lengths, int window) {
+		/*
+		every mode but NONE must mark every sample valid; SHRINK and
+		EXTRAPOLATE fit the ends, so they must also be exact for a polynomial
+		of degree derivative (MIRROR and NEAREST bend it and are not checked)
+		*/
+		int problems = 0;
+		for (int derivative = 0; derivative <= 3; derivative++) {
+			for (int order = derivative; order <= 4; order++) {
+				for (int n: lengths) {
+					double[] data = new double[n];
+					for (int i = 0; i < n; i++) {
+						data[i] = 3 - 0.2 * i * Math.min(derivative, 1) + 0.5 * Math.pow(i, derivative);
+					}
+					double exact = derivative == 1 ? 0.3 : 0.5 * factorial(derivative);
+					//the series must hold an odd window longer than the derivative
+					boolean fits = n >= derivative + 1 + derivative % 2;
+					for (EdgeMode edge: EdgeMode.values()) {
+						MaskedSeries filtered = SavitzkyGolay.filter(data, window, order, derivative, edge);
+						boolean exactEnds = edge == EdgeMode.SHRINK || edge == EdgeMode.EXTRAPOLATE;
+						String problem = null;
+						for (int i = 0; i < n && problem == null; i++) {
+							if (filtered.isValid(i)) {
+								double expected = derivative == 0 ? data[i] : exact;
+								if (exactEnds && Math.abs(filtered.get(i) - expected) > 1e-9 * Math.max(1, Math.abs(expected))) {
+									problem = "sample " + i + " is " + filtered.get(i) + ", not " + expected;
+								}
+							} else if (edge != EdgeMode.NONE && fits) {
+								problem = "sample " + i + " invalid";
+							}
+						}
+						if (problem != null) {
+							problems++;
+							System.out.printf("edges     %-11s N %2d order %d derivative %d: %s%n", edge, n, order,
+									derivative, problem);
+						}
+					}
+				}
+			}
+		}
+		System.out.println("edges     " + (problems == 0 ? "all modes fill the ends" : problems + " PROBLEMS"));
+	}
+
+	private static double factorial(int k) {
+		double product = 1;
+		for (int f = 2; f <= k; f++) {
+			product *= f;
+		}
+		return product;
+	}
+
+	private static double exactSum(double[] data, double[] weights, int i) {
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int j = 0; j < weights.length; j++) {
+			sum = sum.add(new BigDecimal(weights[j]).multiply(new BigDecimal(data[i - weights.length / 2 + j])));
+		}
+		return sum.doubleValue();
+	}
+
+	public static void benchmarkStreaming(int[] windows, int n) {
+		//samples per second through StreamingSavitzkyGolay, smoothing plus first derivative
+		double[] chunk = new double[4096];
+		double[][] out = new double[2][chunk.length];
+		double[] single = new double[2];
+		for (int window: windows) {
+			StreamingSavitzkyGolay filter = new StreamingSavitzkyGolay(window, 3, 1);
+			double sink = 0;
+			long chunked = Long.MAX_VALUE;
+			long sampled = Long.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				filter.reset();
+				long start = System.nanoTime();
+				for (int done = 0; done < n; done += chunk.length) {
+					for (int i = 0; i < chunk.length; i++) {
+						chunk[i] = Math.sin((done + i) * 1e-3);
+					}
+					int written = filter.push(chunk, 0, chunk.length, out, 0);
+					sink += written > 0 ? out[1][written - 1] : 0;
+				}
+				long middle = System.nanoTime();
+				filter.reset();
+				for (int i = 0; i < n; i++) {
+					if (filter.push(Math.sin(i * 1e-3), single)) {
+						sink += single[1];
+					}
+				}
+				long end = System.nanoTime();
+				chunked = Math.min(chunked, middle - start);
+				sampled = Math.min(sampled, end - middle);
+			}
+			System.out.printf("streaming K=%-4d chunks %.3e samples/s, one at a time %.3e samples/s (%.1e)%n",
+					window, n / (chunked / 1e9), n / (sampled / 1e9), sink);
+		}
+	}
+
+	public static void benchmarkMovingAverage(int[] windows, int n) {
+		//every moving average is linear in n, so the time per sample should not grow with the window
+		Random random = new Random(2);
+		double[] data = new double[n];
+		for (int i = 0; i < n; i++) {
+			data[i] = 315 + 0.1 * i / 525600 + 3 * Math.sin(2 * Math.PI * i / 525600) + random.nextGaussian() * 0.3;
+		}
+		for (int window: windows) {
+			System.out.printf("moving average K=%-6d", window);
+			for (MovingAverage.Kind kind: MovingAverage.Kind.values()) {
+				long best = Long.MAX_VALUE;
+				double[] smoothed = null;
+				for (int round = 0; round < ROUNDS; round++) {
+					long start = System.nanoTime();
+					smoothed = MovingAverage.smooth(data, window, kind);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				System.out.printf(" %s %.2f ns/sample (%.3f)", kind.name().toLowerCase(), (double) best / n,
+						smoothed[n / 2]);
+			}
+			System.out.println();
+		}
+	}
+
+	public static void benchmarkBatch(int stations, int months) {
+		//the Keeling pipeline over many station series, by thread count
+		Random random = new Random(3);
+		double[][] channels = new double[stations][months];
+		double[][] out = new double[stations][months];
+		boolean[][] valid = new boolean[stations][months];
+		for (double[] channel: channels) {
+			double offset = 300 + 20 * random.nextDouble();
+			for (int i = 0; i < months; i++) {
+				channel[i] = offset + 0.1 * i + 3 * Math.sin(2 * Math.PI * i / 12) + random.nextGaussian() * 0.3;
+			}
+		}
+		SavitzkyGolayBatch batch = new SavitzkyGolayBatch(25, MovingAverage.Kind.CENTERED, 9, 1, 1);
+		//every thread count must match one channel done alone
+		double[] single = new double[months];
+		boolean[] singleValid = new boolean[months];
+		batch.filter(channels[stations - 1], single, singleValid);
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			double best = 0;
+			for (int round = 0; round < ROUNDS; round++) {
+				best = Math.max(best, batch.filter(channels, out, valid, pool));
+			}
+			pool.shutdown();
+			boolean same = Arrays.equals(single, out[stations - 1]) && Arrays.equals(singleValid, valid[stations - 1]);
+			System.out.printf("batch %d x %d, %2d threads %.3e samples/s%s%n", stations, months, threads, best,
+					same ? "" : " MISMATCH");
+		}
+	}
+
+	public static void benchmarkLoader(int rows) throws IOException {
+		//MB/s of NumericLoader against Scanner on a two-column, tab-separated file
+		File file = File.createTempFile("loader", ".txt");
+		file.deleteOnExit();
+		Random random = new Random(4);
+		try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+			for (int i = 0; i < rows; i++) {
+				out.print(i);
+				out.print('\t');
+				out.println((float) (random.nextGaussian() * 100));
+			}
+		}
+		double megabytes = file.length() / 1e6;
+		long best = Long.MAX_VALUE;
+		double[][] table = null;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			table = NumericLoader.load(file.getPath());
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		long start = System.nanoTime();
+		double[] second = new double[rows];
+		try (Scanner in = new Scanner(file)) {
+			for (int i = 0; i < rows; i++) {
+				in.next();
+				second[i] = in.nextDouble();
+			}
+		}
+		long scanner = System.nanoTime() - start;
+		System.out.printf("loader %.1f MB: mapped %.1f MB/s, Scanner %.1f MB/s (%s)%n", megabytes,
+				megabytes / (best / 1e9), megabytes / (scanner / 1e9),
+				Arrays.equals(second, table[1]) ? "same values" : "VALUES DIFFER");
+		//the binary cache: built once, then mapped (and copied out by load)
+		File cache = new File(file.getPath() + ".bin");
+		cache.deleteOnExit();
+		start = System.nanoTime();
+		NumericCache.load(file.getPath());
+		long build = System.nanoTime() - start;
+		long mapped = Long.MAX_VALUE;
+		long copied = Long.MAX_VALUE;
+		double check = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			start = System.nanoTime();
+			java.nio.DoubleBuffer[] columns = NumericCache.map(file.getPath());
+			check += columns[1].get(rows - 1);
+			long middle = System.nanoTime();
+			table = NumericCache.load(file.getPath());
+			long end = System.nanoTime();
+			mapped = Math.min(mapped, middle - start);
+			copied = Math.min(copied, end - middle);
+		}
+		System.out.printf("cache  build %.2f ms, map %.3f ms, load %.2f ms (%s)%n", build / 1e6, mapped / 1e6,
+				copied / 1e6, Arrays.equals(second, table[1]) && check == ROUNDS * second[rows - 1] ? "same values" : "VALUES DIFFER");
+		cache.delete();
+	}
+}
@@ -47,42 +47,53 @@ a pronounced slope change in the time period corresponding to Mt. Pinatubo. As b
 your differentiated data by a factor of 4 for better visualization.
 */
 
+import java.util.Arrays;
 import java.util.Scanner;
 import java.io.*;
 import java.awt.*;
 
 public class SavitzkyGolayFilterKeeling {
-	private static int[][] filters = {
-		{0, 0, -3, 12, 17, 12, -3, 0, 0},
-		{0, -2, 3, 6, 7, 6, 3, -2, 0},
-		{-21, 14, 39, 54, 59, 54, 39, 14, -21},
-		{0, 5, -30, 75, 131, 75, -30, 5, 0},
-		{15, -55, 30, 135, 179, 135, 30, -55, 15},
-		{0, 0, 0, -1, 0, 1, 0, 0, 0},
-		{0, 0, -2, -1, 0, 1, 2, 0, 0},
-		{0, -3, -2, -1, 0, 1, 2, 3, 0},
-		{-4, -3, -2, -1, 0, 1, 2, 3, 4},
-		{0, 0, 1, -8, 0, 8, -1, 0, 0},
-		{0, 22, -67, -58, 0, 58, 67, -22, 0},
-		{86, -142, -193, -126, 0, 126, 193, 142, -86}
+	private static final int[][] filterSpecs = {
+		// {window, polynomial order, derivative, old table normalization} for each menu entry
+		{5, 2, 0, 35},
+		{7, 2, 0, 21},
+		{9, 2, 0, 231},
+		{7, 4, 0, 231},
+		{9, 4, 0, 429},
+		{3, 1, 1, 2},
+		{5, 1, 1, 10},
+		{7, 1, 1, 28},
+		{9, 1, 1, 60},
+		{5, 3, 1, 12},
+		{7, 3, 1, 252},
+		{9, 3, 1, 1188}
 	};
+	private static final int CUSTOM = 12; // menu entry for any window/order/derivative
+	private static final int CUSTOM_NORMALIZATION = 60; // custom derivatives are plotted like entry 8
+	private static final double PLOT_SCALE = 4; // the old plots drew the unnormalized sum times 4
 
 	public static void main(String[] args) throws Exception {
 		String file = "KeelingDataSavGol.txt";
-		int size = 697;
-		// ^hardcoded file information
-		Scanner in = new Scanner(new File(file));
-		double[] data = getData(in, size);
+		// ^hardcoded file information; its length is read from the file
+		Scanner in = new Scanner(System.in);
+		double[] data = getData(file);
 		int filterKey = inputFilterKey(in);
-		int window = inputMovingAverageWindow(in);
+		int[] spec = filterKey == CUSTOM ? inputCustomFilter() : filterSpecs[filterKey];
+		int window = inputMovingAverageWindow(in, data.length);
+		MovingAverage.Kind kind = inputMovingAverageKind(in);
+		EdgeMode edge = inputEdgeMode(in);
 		DrawingPanel panel = new DrawingPanel(800, 400);
 		Graphics g = panel.getGraphics();
-		drawTime(g);
-		drawData(g, data);
-		data = smoothData(data, window);
-		drawData(g, data);
-		double[] derivative = filter(data, filterKey);
-		drawData(g, derivative);
+		drawTime(g, data.length);
+		drawData(panel, data);
+		MaskedSeries smoothed = smoothData(data, window, kind, edge);
+		drawData(panel, smoothed);
+		MaskedSeries derivative = filter(smoothed, spec, edge);
+		if (spec[2] > 0) {
+			// the filters are normalized now, so put the old table's normalization back
+			derivative = scale(derivative, PLOT_SCALE * spec[3], 310);
+		}
+		drawData(panel, derivative);
 	}
 
 	public static int inputFilterKey(Scanner console) {
@@ -113,78 +124,154 @@ public class SavitzkyGolayFilterKeeling {
 		System.out.println("  10  { 0,  22, -67, -58,0, 58, 67,-22,  0}");
 		System.out.println("  11  {86,-142,-193,-126,0,126,193,142,-86}");
 
+		System.out.println();
+		System.out.println("  12  custom window, order and derivative");
+
 		// select filter
-		System.out.print("Enter an integer 0 - 11 corresponding to desired filter: ");
+		System.out.print("Enter an integer 0 - 12 corresponding to desired filter: ");
 		int filterKey = console.nextInt();
 		System.out.println();
 		return filterKey;
 	}
 
-	public static int inputMovingAverageWindow(Scanner console) {
+	public static int[] inputCustomFilter() {
+		// any odd window length, polynomial order and derivative order
+		Scanner console = new Scanner(System.in);
+		System.out.print("Window length (odd): ");
+		int window = console.nextInt();
+		System.out.print("Polynomial order: ");
+		int order = console.nextInt();
+		System.out.print("Derivative (0 smooths): ");
+		int derivative = console.nextInt();
+		System.out.println();
+		return new int[] {window, order, derivative, CUSTOM_NORMALIZATION};
+	}
+
+	public static int inputMovingAverageWindow(Scanner console, int size) {
 		// provide user prompts to specify Savitsky-Golay coefficients
 		console = new Scanner(System.in);
-		System.out.println("Enter an integer from 1 - 697 corresponding to the size of");
+		System.out.println("Enter an integer from 1 - " + size + " corresponding to the size of");
 		System.out.print("the size of the moving average's window in months: ");
 		int window = console.nextInt();
 		System.out.println();
 		return window;
 	}
 
-	public static void drawTime(Graphics g) {
-		for (int i = 0; i < 697; i += 24) {
+	public static MovingAverage.Kind inputMovingAverageKind(Scanner console) {
+		// which weighting the moving average uses
+		console = new Scanner(System.in);
+		MovingAverage.Kind[] kinds = MovingAverage.Kind.values();
+		for (int i = 0; i < kinds.length; i++) {
+			System.out.println("  " + i + "   " + kinds[i].name().toLowerCase());
+		}
+		System.out.print("Enter an integer 0 - " + (kinds.length - 1) + " corresponding to the moving average: ");
+		int kind = console.nextInt();
+		System.out.println();
+		return kinds[kind];
+	}
+
+	public static EdgeMode inputEdgeMode(Scanner console) {
+		// how to treat the ends of the data, where a full window does not fit
+		console = new Scanner(System.in);
+		EdgeMode[] modes = EdgeMode.values();
+		for (int i = 0; i < modes.length; i++) {
+			System.out.println("  " + i + "   " + modes[i].name().toLowerCase());
+		}
+		System.out.print("Enter an integer 0 - " + (modes.length - 1) + " corresponding to the edge handling: ");
+		int mode = console.nextInt();
+		System.out.println();
+		return modes[mode];
+	}
+
+	public static void drawTime(Graphics g, int size) {
+		for (int i = 0; i < size; i += 24) {
 			g.drawLine(i, 400, i, 395);
 		}
 	}
 
-	public static double[] getData(Scanner in, int size) throws Exception {
+	public static double[] getData(String file) throws Exception {
 		// collects data from hardcoded .txt file
-		double[] data = new double[size];
-		for (int i = 0; i < size; i++) {
-			data[i] = in.nextDouble();
-		}
-		return data;
+		return NumericCache.loadColumn(file, 0);
 	}
 
 	public static double[] smoothData(double[] data, int window) {
-		if (window == 1) {
-			return data;
-		}
-		double[] smoothedData = new double[data.length];
-		for (int i = window / 2; i < data.length - window / 2; i++) {
-			double average = 0;
-			for (int j = - window / 2; j < window / 2; j++) {
-				average += data[i + j];
-			}
-			smoothedData[i] = average / window;
-		}
-		return smoothedData;
+		return smoothData(data, window, MovingAverage.Kind.CENTERED);
+	}
+
+	public static double[] smoothData(double[] data, int window, MovingAverage.Kind kind) {
+		// running sums make this linear in data.length whatever the window
+		return MovingAverage.smooth(data, window, kind);
+	}
+
+	public static MaskedSeries smoothData(double[] data, int window, MovingAverage.Kind kind, EdgeMode edge) {
+		return MovingAverage.smooth(data, window, kind, edge);
 	}
 
-	public static void drawData(Graphics g, double[] data) {
+	public static void drawData(DrawingPanel panel, double[] data) {
 		// graphs all data stored in double array onto the drawing panel
+		int[] xs = new int[data.length];
+		int[] ys = new int[data.length];
 		for (int i = 0; i < data.length; i++) {
-			// graphs a point
-			g.drawOval(i, (int) (399 - (data[i] - 310) * 4), 1, 1);
+			xs[i] = i;
+			ys[i] = (int) (399 - (data[i] - 310) * 4);
 		}
+		// 2 x 2 squares cover what drawOval(x, y, 1, 1) did, written straight into the pixels
+		panel.drawScatter(xs, ys, data.length, 2, panel.getGraphics().getColor());
 	}
 
-	public static double[] filter(double[] data, int filterKey) {
-		double[] derivative = new double[data.length];
-		for (int i = 5; i < data.length - 4; i++) {
-			double weightedSum = 0;
-			for (int j = 0; j < 9; j++) {
-				// pass each data point through the filter
-				weightedSum += data[i - 5 + j] * filters[filterKey][j];
+	public static void drawData(DrawingPanel panel, MaskedSeries data) {
+		// graphs only the points the filter could produce
+		int[] xs = new int[data.length()];
+		int[] ys = new int[data.length()];
+		int n = 0;
+		for (int i = 0; i < data.length(); i++) {
+			if (data.isValid(i)) {
+				xs[n] = i;
+				ys[n++] = (int) (399 - (data.get(i) - 310) * 4);
 			}
-			derivative[i] = (weightedSum * 4 + 310); //sum is scaled by 4
 		}
-		for (int i = 0; i < 5; i++) {
-			// not enough data to take derivative of these endpoints
-			// setting the data to -5 makes it not appear in graph
-			derivative[i] = -5;
-			derivative[i + data.length - 5] = -5;
+		panel.drawScatter(xs, ys, n, 2, panel.getGraphics().getColor());
+	}
+
+	public static MaskedSeries filter(double[] data, int filterKey) {
+		return filter(data, filterSpecs[filterKey], EdgeMode.NONE);
+	}
+
+	public static MaskedSeries filter(double[] data, int[] spec, EdgeMode edge) {
+		// samples within half a window of the ends are handled by edge, or marked invalid
+		return SavitzkyGolay.filter(data, spec[0], spec[1], spec[2], edge);
+	}
+
+	public static MaskedSeries filter(MaskedSeries data, int[] spec, EdgeMode edge) {
+		// filters the valid stretch of data, so unsmoothed ends never leak in
+		int n = data.length();
+		int from = 0;
+		while (from < n && !data.isValid(from)) {
+			from++;
+		}
+		int to = n;
+		while (to > from && !data.isValid(to - 1)) {
+			to--;
 		}
-		return derivative;
+		MaskedSeries run = filter(Arrays.copyOfRange(data.getValues(), from, to), spec, edge);
+		double[] values = new double[n];
+		boolean[] valid = new boolean[n];
+		System.arraycopy(run.getValues(), 0, values, from, to - from);
+		System.arraycopy(run.getValid(), 0, valid, from, to - from);
+		return new MaskedSeries(values, valid);
+	}
+
+	public static double[] scale(double[] data, double factor, double offset) {
+		// stretches filtered data so it can share the plot with the raw data
+		double[] scaled = new double[data.length];
+		for (int i = 0; i < data.length; i++) {
+			scaled[i] = data[i] * factor + offset;
+		}
+		return scaled;
+	}
+
+	public static MaskedSeries scale(MaskedSeries data, double factor, double offset) {
+		return new MaskedSeries(scale(data.getValues(), factor, offset), data.getValid());
 	}
 
 }
\ No newline at end of file
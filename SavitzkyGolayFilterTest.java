@@ -120,33 +120,41 @@ import java.awt.*;
 
 public class SavitzkyGolayFilterTest {
 
-	private static int[][] filters = {
-		{0, 0, -3, 12, 17, 12, -3, 0, 0},
-		{0, -2, 3, 6, 7, 6, 3, -2, 0},
-		{-21, 14, 39, 54, 59, 54, 39, 14, -21},
-		{0, 5, -30, 75, 131, 75, -30, 5, 0},
-		{15, -55, 30, 135, 179, 135, 30, -55, 15},
-		{0, 0, 0, -1, 0, 1, 0, 0, 0},
-		{0, 0, -2, -1, 0, 1, 2, 0, 0},
-		{0, -3, -2, -1, 0, 1, 2, 3, 0},
-		{-4, -3, -2, -1, 0, 1, 2, 3, 4},
-		{0, 0, 1, -8, 0, 8, -1, 0, 0},
-		{0, 22, -67, -58, 0, 58, 67, -22, 0},
-		{86, -142, -193, -126, 0, 126, 193, 142, -86}
+	private static final int[][] filterSpecs = {
+		// {window, polynomial order, derivative, old table normalization} for each menu entry
+		{5, 2, 0, 35},
+		{7, 2, 0, 21},
+		{9, 2, 0, 231},
+		{7, 4, 0, 231},
+		{9, 4, 0, 429},
+		{3, 1, 1, 2},
+		{5, 1, 1, 10},
+		{7, 1, 1, 28},
+		{9, 1, 1, 60},
+		{5, 3, 1, 12},
+		{7, 3, 1, 252},
+		{9, 3, 1, 1188}
 	};
+	private static final int CUSTOM = 12; // menu entry for any window/order/derivative
+	private static final int CUSTOM_NORMALIZATION = 60; // custom derivatives are plotted like entry 8
+	private static final double PLOT_SCALE = 4; // the old plots drew the unnormalized sum times 4
 
 	public static void main(String[] args) throws Exception {
 		String file = "ParabolaPlusGaussian.txt";
-		int size = 800;
-		// ^hardcoded file information
-		Scanner in = new Scanner(new File(file));
-		double[] data = getData(in, size);
+		// ^hardcoded file information; its length is read from the file
+		Scanner in = new Scanner(System.in);
+		double[] data = getData(file);
 		int filterKey = input(in);
+		int[] spec = filterKey == CUSTOM ? inputCustomFilter() : filterSpecs[filterKey];
+		EdgeMode edge = inputEdgeMode(in);
 		DrawingPanel panel = new DrawingPanel(800, 400);
-		Graphics g = panel.getGraphics();
-		drawData(g, data);
-		double[] derivative = filter(data, filterKey);
-		drawData(g, derivative);
+		drawData(panel, data);
+		MaskedSeries derivative = filter(data, spec, edge);
+		if (spec[2] > 0) {
+			// the filters are normalized now, so put the old table's normalization back
+			derivative = scale(derivative, PLOT_SCALE * spec[3], 0);
+		}
+		drawData(panel, derivative);
 	}
 
 	public static int input(Scanner console) {
@@ -177,48 +185,93 @@ public class SavitzkyGolayFilterTest {
 		System.out.println("  10  { 0,  22, -67, -58,0, 58, 67,-22,  0}");
 		System.out.println("  11  {86,-142,-193,-126,0,126,193,142,-86}");
 
+		System.out.println();
+		System.out.println("  12  custom window, order and derivative");
+
 		// select filter
-		System.out.print("Enter an integer 0 - 11 corresponding to desired filter: ");
+		System.out.print("Enter an integer 0 - 12 corresponding to desired filter: ");
 		int filterKey = console.nextInt();
 		System.out.println();
 		return filterKey;
 	}
 
-	public static double[] getData(Scanner in, int size) throws Exception {
-		// collects data from hardcoded .txt file
-		double[] data = new double[size];
-		for (int i = 0; i < size; i++) {
-			in.next();
-			data[i] = in.nextDouble();
+	public static int[] inputCustomFilter() {
+		// any odd window length, polynomial order and derivative order
+		Scanner console = new Scanner(System.in);
+		System.out.print("Window length (odd): ");
+		int window = console.nextInt();
+		System.out.print("Polynomial order: ");
+		int order = console.nextInt();
+		System.out.print("Derivative (0 smooths): ");
+		int derivative = console.nextInt();
+		System.out.println();
+		return new int[] {window, order, derivative, CUSTOM_NORMALIZATION};
+	}
+
+	public static EdgeMode inputEdgeMode(Scanner console) {
+		// how to treat the ends of the data, where a full window does not fit
+		console = new Scanner(System.in);
+		EdgeMode[] modes = EdgeMode.values();
+		for (int i = 0; i < modes.length; i++) {
+			System.out.println("  " + i + "   " + modes[i].name().toLowerCase());
 		}
-		return data;
+		System.out.print("Enter an integer 0 - " + (modes.length - 1) + " corresponding to the edge handling: ");
+		int mode = console.nextInt();
+		System.out.println();
+		return modes[mode];
+	}
+
+	public static double[] getData(String file) throws Exception {
+		// collects data from hardcoded .txt file, second column of two
+		return NumericCache.loadColumn(file, 1);
 	}
 
-	public static void drawData(Graphics g, double[] data) {
+	public static void drawData(DrawingPanel panel, double[] data) {
 		// graphs all data stored in double array onto the drawing panel
+		int[] xs = new int[data.length];
+		int[] ys = new int[data.length];
 		for (int i = 0; i < data.length; i++) {
-			// graphs a point
-			g.drawOval(i, (int) (399 - data[i]), 1, 1);
+			xs[i] = i;
+			ys[i] = (int) (399 - data[i]);
 		}
+		// 2 x 2 squares cover what drawOval(x, y, 1, 1) did, written straight into the pixels
+		panel.drawScatter(xs, ys, data.length, 2, panel.getGraphics().getColor());
 	}
 
-	public static double[] filter(double[] data, int filterKey) {
-		double[] derivative = new double[data.length];
-		for (int i = 5; i < data.length - 4; i++) {
-			double weightedSum = 0;
-			for (int j = 0; j < 9; j++) {
-				// pass each data point through the filter
-				weightedSum += data[i - 5 + j] * filters[filterKey][j];
+	public static void drawData(DrawingPanel panel, MaskedSeries data) {
+		// graphs only the points the filter could produce
+		int[] xs = new int[data.length()];
+		int[] ys = new int[data.length()];
+		int n = 0;
+		for (int i = 0; i < data.length(); i++) {
+			if (data.isValid(i)) {
+				xs[n] = i;
+				ys[n++] = (int) (399 - data.get(i));
 			}
-			derivative[i] = weightedSum * 4; //sum is scaled by 4
 		}
-		for (int i = 0; i < 5; i++) {
-			// not enough data to take derivative of these endpoints
-			// setting the data to -5 makes it not appear in graph
-			derivative[i] = -5;
-			derivative[i + 795] = -5;
+		panel.drawScatter(xs, ys, n, 2, panel.getGraphics().getColor());
+	}
+
+	public static MaskedSeries filter(double[] data, int filterKey) {
+		return filter(data, filterSpecs[filterKey], EdgeMode.NONE);
+	}
+
+	public static MaskedSeries filter(double[] data, int[] spec, EdgeMode edge) {
+		// samples within half a window of the ends are handled by edge, or marked invalid
+		return SavitzkyGolay.filter(data, spec[0], spec[1], spec[2], edge);
+	}
+
+	public static double[] scale(double[] data, double factor, double offset) {
+		// stretches filtered data so it can share the plot with the raw data
+		double[] scaled = new double[data.length];
+		for (int i = 0; i < data.length; i++) {
+			scaled[i] = data[i] * factor + offset;
 		}
-		return derivative;
+		return scaled;
+	}
+
+	public static MaskedSeries scale(MaskedSeries data, double factor, double offset) {
+		return new MaskedSeries(scale(data.getValues(), factor, offset), data.getValid());
 	}
 }
 
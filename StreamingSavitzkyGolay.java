@@ -0,0 +1,99 @@
+/*
+Streaming Savitzky-Golay Filter
+Filters an unbounded stream one sample (or one chunk) at a time. The last
+window samples live in a ring buffer that is written twice, at i and at
+i + window, so the current window is always one contiguous run and the
+inner loop needs no wrap-around. Once the buffer is full every new sample
+yields the smoothed value and requested derivatives of the sample half a
+window earlier. Nothing is allocated after construction.
+*/
+
+public class StreamingSavitzkyGolay {
+
+	private final int window;
+	private final double[][] weights; //one row per derivative order
+	private final double[] ring;
+	private int next; //where the next sample goes, 0 <= next < window
+	private long count;
+
+	//emits derivatives 0 through maxDerivative (0 is the smoothed value)
+	public StreamingSavitzkyGolay(int window, int order, int maxDerivative) {
+		this.window = window;
+		this.weights = new double[maxDerivative + 1][];
+		for (int d = 0; d <= maxDerivative; d++) {
+			weights[d] = SavitzkyGolay.coefficients(window, order, d);
+		}
+		this.ring = new double[2 * window];
+	}
+
+	//how many samples behind the input the outputs are
+	public int getDelay() {
+		return window / 2;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void reset() {
+		next = 0;
+		count = 0;
+	}
+
+	/*
+	adds one sample; once a full window has been seen, stores the value and
+	derivatives for the sample getDelay() steps back in out[0..maxDerivative]
+	and returns true
+	*/
+	public boolean push(double sample, double[] out) {
+		ring[next] = sample;
+		ring[next + window] = sample;
+		next++;
+		if (next == window) {
+			next = 0;
+		}
+		count++;
+		if (count < window) {
+			return false;
+		}
+		//the oldest sample is at next, the newest at next + window - 1
+		for (int d = 0; d < weights.length; d++) {
+			double[] w = weights[d];
+			double weightedSum = 0;
+			for (int j = 0; j < window; j++) {
+				weightedSum += ring[next + j] * w[j];
+			}
+			out[d] = weightedSum;
+		}
+		return true;
+	}
+
+	/*
+	pushes samples[offset .. offset + length) and writes each output to
+	out[d][outOffset + k]; returns how many outputs were written
+	*/
+	public int push(double[] samples, int offset, int length, double[][] out, int outOffset) {
+		int written = 0;
+		for (int i = offset; i < offset + length; i++) {
+			ring[next] = samples[i];
+			ring[next + window] = samples[i];
+			next++;
+			if (next == window) {
+				next = 0;
+			}
+			count++;
+			if (count >= window) {
+				for (int d = 0; d < weights.length; d++) {
+					double[] w = weights[d];
+					double weightedSum = 0;
+					for (int j = 0; j < window; j++) {
+						weightedSum += ring[next + j] * w[j];
+					}
+					out[d][outOffset + written] = weightedSum;
+				}
+				written++;
+			}
+		}
+		return written;
+	}
+}
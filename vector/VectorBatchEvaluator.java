@@ -0,0 +1,91 @@
+/*
+Vector Batch Evaluator
+SIMD version of BatchEvaluator on the incubating Vector API. Nothing refers
+to this class directly; BatchEvaluator.compile loads it by name and falls
+back to the scalar loops when the module is missing. It lives apart so the
+usual javac *.java needs no module flag; to add it, from the directory above
+
+	javac *.java
+	javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorBatchEvaluator.java
+	java --add-modules jdk.incubator.vector MonteCarloIntegrationInput
+*/
+
+import java.util.*;
+import jdk.incubator.vector.*;
+
+public class VectorBatchEvaluator extends BatchEvaluator {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	public VectorBatchEvaluator(Queue<String> postfix) {
+		super(postfix);
+	}
+
+	public boolean isVectorized() {
+		return true;
+	}
+
+	protected void binary(Operator op, double[] a, double[] b, int from, int to) {
+		//one loop per operator so each stays a constant the JIT can intrinsify
+		int step = SPECIES.length();
+		int bound = from + SPECIES.loopBound(to - from);
+		int i = from;
+		if (op == Operator.ADD) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+			}
+		} else if (op == Operator.SUBTRACT) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+			}
+		} else if (op == Operator.MULTIPLY) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+			}
+		} else if (op == Operator.DIVIDE) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).div(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+			}
+		} else if (op == Operator.POWER) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i)
+					.lanewise(VectorOperators.POW, DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+			}
+		}
+		//leftover lanes that do not fill a whole vector
+		super.binary(op, a, b, i, to);
+	}
+
+	protected void unary(Operator op, double[] a, int from, int to) {
+		int step = SPECIES.length();
+		int bound = from + SPECIES.loopBound(to - from);
+		int i = from;
+		if (op == Operator.NEGATE) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).neg().intoArray(a, i);
+			}
+		} else if (op == Operator.ABS) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).abs().intoArray(a, i);
+			}
+		} else if (op == Operator.SQRT) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).sqrt().intoArray(a, i);
+			}
+		} else if (op == Operator.SIN) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.SIN).intoArray(a, i);
+			}
+		} else if (op == Operator.COS) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.COS).intoArray(a, i);
+			}
+		} else if (op == Operator.EXP) {
+			for (; i < bound; i += step) {
+				DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.EXP).intoArray(a, i);
+			}
+		}
+		//other functions and leftover lanes go through the scalar loop
+		super.unary(op, a, i, to);
+	}
+}